@@ -0,0 +1,64 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 汇编生成阶段, 分别测量 IR 的预处理 ({@code loadIR}) 与寄存器分配及代码生成 ({@code run})
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AssemblyBenchmark {
+    /**
+     * 赋值语句的条数
+     */
+    @Param({"1000", "100000", "10000000"})
+    public int statements;
+
+    private List<Instruction> instructions;
+    private IRBuffer buffer;
+    private AssemblyGenerator loadedGenerator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.loadTokenKinds();
+        buffer = BenchmarkSupport.compileToBuffer(statements);
+        instructions = new ArrayList<>(buffer.asInstructions());
+    }
+
+    @Setup(Level.Invocation)
+    public void loadIR() {
+        loadedGenerator = new AssemblyGenerator();
+        loadedGenerator.loadIR(instructions);
+    }
+
+    @Benchmark
+    public AssemblyGenerator load() {
+        final var generator = new AssemblyGenerator();
+        generator.loadIR(instructions);
+        return generator;
+    }
+
+    @Benchmark
+    public AssemblyGenerator loadBuffer() {
+        final var generator = new AssemblyGenerator();
+        generator.loadIR(buffer);
+        return generator;
+    }
+
+    @Benchmark
+    public AssemblyGenerator run() {
+        loadedGenerator.run();
+        return loadedGenerator;
+    }
+}
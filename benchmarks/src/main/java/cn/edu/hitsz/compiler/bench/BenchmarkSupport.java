@@ -0,0 +1,131 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.ProgramGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 各基准测试共用的准备工作: 与 Main 相同的步骤, 用来为被测阶段准备好其输入
+ * <br>
+ * 程序中的路径都是相对于仓库根目录的, 因此基准测试需要在仓库根目录下运行.
+ */
+final class BenchmarkSupport {
+    /**
+     * 读取码点文件; 同一 JVM 中只能读取一次
+     */
+    static void loadTokenKinds() {
+        if (TokenKind.allAllowedTokenKinds().isEmpty()) {
+            TokenKind.loadTokenKinds();
+        }
+    }
+
+    /**
+     * 生成指定规模的源程序并写入临时文件, JVM 退出时删除
+     * <br>
+     * 只声明 4 个变量, 表达式深度不超过 3, 以保证汇编生成时的寄存器压力不会超过可用寄存器数
+     *
+     * @param statements 赋值语句的条数
+     * @return 源程序路径
+     */
+    static Path writeProgram(int statements) {
+        try {
+            final var path = Files.createTempFile("generated-" + statements + "-", ".txt");
+            path.toFile().deleteOnExit();
+            new ProgramGenerator(4, statements, 3, 3, 0).writeTo(path.toString());
+            return path;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on generating program", e);
+        }
+    }
+
+    static LRTable loadTable() {
+        return new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+    }
+
+    /**
+     * 对源程序做词法分析, 结果的 token 存入列表, 标识符登记入给定的符号表
+     */
+    static List<Token> lex(Path source, SymbolTable symbolTable) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(source.toString());
+        lexer.run();
+
+        final var tokens = new ArrayList<Token>();
+        lexer.getTokens().forEach(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * 构造一个注册了 Main 中三个观察者的语法分析器
+     */
+    static SyntaxAnalyzer parserWithObservers(List<Token> tokens, LRTable table, SymbolTable symbolTable, IRGenerator irGenerator) {
+        return parserWithObservers(tokens, table, symbolTable, irGenerator, SyntaxAnalyzer.Mode.Standard);
+    }
+
+    static SyntaxAnalyzer parserWithObservers(List<Token> tokens, LRTable table, SymbolTable symbolTable, IRGenerator irGenerator,
+                                              SyntaxAnalyzer.Mode mode) {
+        final var parser = new SyntaxAnalyzer(symbolTable, mode);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(table);
+        parser.registerObserver(new ProductionCollector(GrammarInfo.getBeginProduction()));
+        parser.registerObserver(new SemanticAnalyzer());
+        parser.registerObserver(irGenerator);
+        return parser;
+    }
+
+    /**
+     * 生成指定规模的程序并一路编译到 IR
+     */
+    static List<Instruction> compileToIR(int statements) {
+        final var symbolTable = new SymbolTable();
+        final var tokens = lex(writeProgram(statements), symbolTable);
+        final var irGenerator = new IRGenerator();
+        parserWithObservers(tokens, loadTable(), symbolTable, irGenerator).run();
+        return irGenerator.getIR();
+    }
+
+    /**
+     * 生成指定规模的程序并一路编译到 IR, IR 以 IRGenerator 内部的 IRBuffer 形式返回
+     */
+    static IRBuffer compileToBuffer(int statements) {
+        final var symbolTable = new SymbolTable();
+        final var tokens = lex(writeProgram(statements), symbolTable);
+        final var irGenerator = new IRGenerator();
+        parserWithObservers(tokens, loadTable(), symbolTable, irGenerator).run();
+        return irGenerator.getBuffer();
+    }
+
+    /**
+     * 语义分析会为符号表条目设置类型, 而类型只能设置一次, 因此每次分析都需要一张新的符号表
+     */
+    static SymbolTable freshSymbolTable(List<Token> tokens) {
+        final var symbolTable = new SymbolTable();
+        for (final var token : tokens) {
+            if ("id".equals(token.getKindId())) {
+                symbolTable.getOrAdd(token.getText());
+            }
+        }
+        return symbolTable;
+    }
+
+    private BenchmarkSupport() {
+    }
+}
@@ -0,0 +1,93 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.ConstantFolder;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IR 模拟执行阶段
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IREmulatorBenchmark {
+    /**
+     * 赋值语句的条数
+     */
+    @Param({"1000", "100000", "10000000"})
+    public int statements;
+
+    private List<Instruction> instructions;
+    private IRBuffer buffer;
+    private IREmulator registerFile;
+    private IREmulator bytecode;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.loadTokenKinds();
+        buffer = BenchmarkSupport.compileToBuffer(statements);
+        instructions = new ArrayList<>(buffer.asInstructions());
+        registerFile = IREmulator.load(buffer, IREmulator.Engine.RegisterFile);
+        bytecode = IREmulator.load(buffer, IREmulator.Engine.Bytecode);
+    }
+
+    @Benchmark
+    public Optional<Integer> execute() {
+        return IREmulator.load(instructions).execute();
+    }
+
+    @Benchmark
+    public Optional<Integer> executeBuffer() {
+        return IREmulator.load(buffer).execute();
+    }
+
+    /**
+     * 先做常量传播与常量折叠, 再执行折叠后的 IR
+     */
+    @Benchmark
+    public Optional<Integer> foldAndExecute() {
+        return IREmulator.load(ConstantFolder.fold(buffer)).execute();
+    }
+
+    @Benchmark
+    public Optional<Integer> executeRegisterFile() {
+        return IREmulator.load(buffer, IREmulator.Engine.RegisterFile).execute();
+    }
+
+    /**
+     * 只计执行, 不计载入时的译码
+     */
+    @Benchmark
+    public Optional<Integer> executeDecoded() {
+        return registerFile.execute();
+    }
+
+    @Benchmark
+    public Optional<Integer> executeClosure() {
+        return IREmulator.load(buffer, IREmulator.Engine.Closure).execute();
+    }
+
+    @Benchmark
+    public Optional<Integer> executeBytecode() {
+        return IREmulator.load(buffer, IREmulator.Engine.Bytecode).execute();
+    }
+
+    /**
+     * 只计执行, 不计载入时的编译与类定义. 生成的方法很多, 需要更长的预热才能全部被 C2 编译
+     */
+    @Benchmark
+    @Warmup(iterations = 10, time = 2)
+    public Optional<Integer> executeCompiled() {
+        return bytecode.execute();
+    }
+}
@@ -0,0 +1,64 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 词法分析阶段, 对比两种自动机实现以及完整读入与流式读取两种模式
+ * <ul>
+ *     <li>{@code run}: 文件已由 loadFile 读入, 只测量 {@code LexicalAnalyzer.run}</li>
+ *     <li>{@code streaming}: 流式模式下遍历 {@code getTokens()}, 包含读文件的开销</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+    /**
+     * 赋值语句的条数
+     */
+    @Param({"1000", "100000", "10000000"})
+    public int statements;
+
+    @Param({"Switch", "Table"})
+    public LexicalAnalyzer.Engine engine;
+
+    private Path source;
+    private LexicalAnalyzer loadedLexer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.loadTokenKinds();
+        source = BenchmarkSupport.writeProgram(statements);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadFile() {
+        loadedLexer = new LexicalAnalyzer(new SymbolTable(), engine);
+        loadedLexer.loadFile(source.toString());
+    }
+
+    @Benchmark
+    public LexicalAnalyzer run() {
+        loadedLexer.run();
+        return loadedLexer;
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) {
+        final var lexer = new LexicalAnalyzer(new SymbolTable(), engine);
+        lexer.loadFileStreaming(source.toString());
+        lexer.run();
+        for (final var token : lexer.getTokens()) {
+            blackhole.consume(token);
+        }
+    }
+}
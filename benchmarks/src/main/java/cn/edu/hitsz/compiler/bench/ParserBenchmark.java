@@ -0,0 +1,74 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语法分析阶段, 分两种情况:
+ * <ul>
+ *     <li>{@code parse}: 不注册任何观察者, 只测量 LR 驱动程序移入/规约/GOTO 的主循环.
+ *     配合 {@code -prof gc} 查看每次解析的分配量 (gc.alloc.rate.norm), 用于确认主循环不再为每个词法单元分配对象</li>
+ *     <li>{@code parseWithObservers}: 注册与 Main 相同的产生式收集, 语义分析与 IR 生成三个观察者</li>
+ *     <li>{@code parseWithObserversEliminatingChains}: 同上, 但驱动程序以 {@link SyntaxAnalyzer.Mode#ChainElimination} 模式运行, 与 Main 相同</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    /**
+     * 赋值语句的条数
+     */
+    @Param({"1000", "100000", "10000000"})
+    public int statements;
+
+    private List<Token> tokens;
+    private LRTable lrTable;
+
+    private SymbolTable symbolTable;
+    private IRGenerator irGenerator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.loadTokenKinds();
+        lrTable = BenchmarkSupport.loadTable();
+        tokens = BenchmarkSupport.lex(BenchmarkSupport.writeProgram(statements), new SymbolTable());
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareObservers() {
+        symbolTable = BenchmarkSupport.freshSymbolTable(tokens);
+        irGenerator = new IRGenerator();
+    }
+
+    @Benchmark
+    public SyntaxAnalyzer parse() {
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(lrTable);
+        parser.run();
+        return parser;
+    }
+
+    @Benchmark
+    public IRGenerator parseWithObservers() {
+        BenchmarkSupport.parserWithObservers(tokens, lrTable, symbolTable, irGenerator).run();
+        return irGenerator;
+    }
+
+    @Benchmark
+    public IRGenerator parseWithObserversEliminatingChains() {
+        BenchmarkSupport.parserWithObservers(tokens, lrTable, symbolTable, irGenerator, SyntaxAnalyzer.Mode.ChainElimination).run();
+        return irGenerator;
+    }
+}
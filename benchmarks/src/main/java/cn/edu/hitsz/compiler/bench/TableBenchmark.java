@@ -0,0 +1,70 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LR 分析表的三种来源: 读取第三方工具生成的 LR1_table.csv, 读取其二进制缓存, 或由 grammar.txt 直接构造
+ * <br>
+ * 由文法构造时分别测量 SLR(1), LR(1) 与 LALR(1) 三种模式, 以及以全部处理器并行构造 LALR(1). 这些都只与文法有关, 与源程序的规模无关. 注意 {@code TableGenerator.run} 中包含向 data/out/items.txt 输出项目集的开销.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableBenchmark {
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.loadTokenKinds();
+        // 预先写出缓存, 使 loadCached 总是命中缓存
+        TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH);
+    }
+
+    @Benchmark
+    public LRTable load() {
+        return new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+    }
+
+    @Benchmark
+    public LRTable loadCached() {
+        return TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH);
+    }
+
+    @Benchmark
+    public LRTable generate() {
+        return generate(TableGenerator.Mode.SLR);
+    }
+
+    @Benchmark
+    public LRTable generateLR1() {
+        return generate(TableGenerator.Mode.LR1);
+    }
+
+    @Benchmark
+    public LRTable generateLALR() {
+        return generate(TableGenerator.Mode.LALR);
+    }
+
+    @Benchmark
+    public LRTable generateLALRParallel() {
+        return generate(TableGenerator.Mode.LALR, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static LRTable generate(TableGenerator.Mode mode) {
+        return generate(mode, 1);
+    }
+
+    private static LRTable generate(TableGenerator.Mode mode, int parallelism) {
+        final var generator = new TableGenerator(mode, parallelism);
+        generator.run();
+        return generator.getTable();
+    }
+}
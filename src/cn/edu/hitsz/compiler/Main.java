@@ -1,24 +1,36 @@
 package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.ConstantFolder;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
-import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.RecordingProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parallel.ParallelCompiler;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
-import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.PhaseTimer;
 
+import java.util.Collection;
 import java.util.Objects;
 
 public class Main {
     public static void main(String[] args) {
+        // 记录各阶段的开销
+        final var timer = new PhaseTimer();
+
         // 构建符号表以供各部分使用
+        var phase = timer.begin("lexer");
         TokenKind.loadTokenKinds();
         final var symbolTable = new SymbolTable();
 
@@ -26,27 +38,102 @@ public class Main {
         final var lexer = new LexicalAnalyzer(symbolTable);
         lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
         lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
         final var tokens = lexer.getTokens();
+        phase.end();
+        // 流式模式下 getTokens 不是集合, 再遍历一次就要重新分析整个文件, 此时不统计 token 数
+        if (tokens instanceof Collection<?> collection) {
+            phase.count("tokens", collection.size());
+        }
+
+        phase = timer.begin("dump");
+        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
         symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+        phase.end();
 
         // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+        phase = timer.begin("tableLoader");
+        // 优先使用二进制缓存, 缓存缺失或过期时才读取 CSV
+        final var lrTable = TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH);
+        phase.end();
+        // 分析表各种存储形式占用的内存
+        final var compiledTable = CompiledLRTable.of(lrTable);
+        phase.count("statusMapBytes", compiledTable.estimateStatusMapBytes())
+            .count("denseBytes", compiledTable.getDenseBytes())
+            .count("packedBytes", compiledTable.getPackedBytes());
 
-        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
+        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表, 可选 SLR, LR1 与 LALR 三种
+        // final var tableGenerator = new TableGenerator(TableGenerator.Mode.LALR);
         // tableGenerator.run();
         // final var lrTable = tableGenerator.getTable();
         // lrTable.dumpTable("data/out/lrTable.csv");
 
-        // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
+        // 默认在当前线程中顺序分析. 以 -Dcompiler.parallelism=N (N > 1) 启动时按语句切分后用 N 个线程并行分析,
+        // 结果与顺序分析完全相同; 但切分与合并的开销不小, 只有源程序很大时才值得开启
+        final var parallelism = Integer.getInteger("compiler.parallelism", 1);
+        final IRBuffer instructions;
+        if (parallelism > 1) {
+            phase = timer.begin("parser");
+            final var compiler = new ParallelCompiler(symbolTable, parallelism);
+            compiler.loadTokens(tokens);
+            compiler.loadLRTable(lrTable);
+            compiler.run();
+            instructions = IRBuffer.of(compiler.getIR(), compiler.getContext());
+            // 工作线程的 CPU 时间与分配的字节数也计入该阶段
+            phase.end()
+                .addWorkerCost(compiler.getWorkerCpuNanos(), compiler.getWorkerAllocatedBytes())
+                .count("reductions", compiler.getReducedProductions().size())
+                .count("instructions", instructions.size())
+                .count("threads", parallelism);
+
+            phase = timer.begin("dump");
+            compiler.dumpReducedProductions(FilePathConfig.PARSER_PATH);
+            symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
+            compiler.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+            phase.end();
+        } else {
+            instructions = parse(timer, symbolTable, tokens, lrTable);
+        }
+
+        // 常量传播与常量折叠, 执行结果与原 IR 相同
+        phase = timer.begin("optimizer");
+        final var optimized = ConstantFolder.fold(instructions);
+        phase.end().count("instructions", optimized.size());
+        optimized.dump(FilePathConfig.OPTIMIZED_CODE_PATH);
+
+        // 模拟执行 IR 并输出结果
+        phase = timer.begin("emulator");
+        final var emulator = IREmulator.load(optimized, IREmulator.Engine.RegisterFile);
+        final var result = emulator.execute();
+        phase.end().count("instructions", optimized.size());
+        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, result.map(Objects::toString).orElse("No return value"));
+
+        // 由 IR 生成汇编; 仍使用未经优化的 IR, 以便与标准输出对照. 换成 optimized 即可生成优化后的汇编
+        phase = timer.begin("assembly");
+        final var asmGenerator = new AssemblyGenerator();
+        asmGenerator.loadIR(instructions);
+        asmGenerator.run();
+        phase.end().count("lines", asmGenerator.getAssembly().size());
+        phase = timer.begin("dump");
+        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        phase.end();
+
+        timer.dumpJson(FilePathConfig.PHASE_METRICS_PATH);
+    }
+
+    /**
+     * 在当前线程中顺序执行语法分析, 语义分析与 IR 生成, 并输出各 Observer 的结果
+     *
+     * @return 生成的 IR
+     */
+    private static IRBuffer parse(PhaseTimer timer, SymbolTable symbolTable, Iterable<Token> tokens, LRTable lrTable) {
+        // 加载 LR 分析驱动程序, 消除单产生式链; ProductionCollector 仍会收到完整的规约序列
+        var phase = timer.begin("parser");
+        final var parser = new SyntaxAnalyzer(symbolTable, SyntaxAnalyzer.Mode.ChainElimination);
         parser.loadTokens(tokens);
         parser.loadLRTable(lrTable);
 
         // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        final var productionCollector = new RecordingProductionCollector(GrammarInfo.getBeginProduction());
         parser.registerObserver(productionCollector);
 
         // 加入用作语义检查的 Observer
@@ -59,21 +146,18 @@ public class Main {
 
         // 执行语法解析并在解析过程中依次调用各 Observer
         parser.run();
+        final var instructions = irGenerator.getBuffer();
+        phase.end()
+            .count("reductions", productionCollector.getReducedProductions().size())
+            .count("instructions", instructions.size());
 
         // 各 Observer 输出结果
+        phase = timer.begin("dump");
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
         symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
         irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+        phase.end();
 
-        // 模拟执行 IR 并输出结果
-        final var emulator = IREmulator.load(instructions);
-        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
-
-        // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
-        asmGenerator.loadIR(instructions);
-        asmGenerator.run();
-        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        return instructions;
     }
 }
@@ -41,19 +41,32 @@ public class AssemblyGenerator {
      */
     public void loadIR(List<Instruction> originInstructions) {
         // TODO: 读入前端提供的中间代码并生成所需要的信息
+        loadIR(IRBuffer.of(originInstructions));
+    }
+
+    /**
+     * 直接从 {@link IRBuffer} 中逐条读取前端提供的中间代码, 不必先构造 {@code List<Instruction>}
+     * <br>
+     * 预处理时新增的临时变量从 buffer 的上下文派生出的上下文中分配, 因此不会与 IR 中已有的变量同名, 也不会改动 buffer
+     *
+     * @param buffer 前端提供的中间代码
+     */
+    public void loadIR(IRBuffer buffer) {
         Integer insCnt = 0;
-        for (var ins : originInstructions) {
-            var insKind = ins.getKind();
+        final var context = buffer.getContext();
+        final var temps = context.derive();
+        for (int idx = 0; idx < buffer.size(); idx++) {
+            var insKind = buffer.getKind(idx);
             if (insKind.isBinary()) {
                 // 两个操作数的指令
-                var lhs = ins.getLHS();
-                var rhs = ins.getRHS();
-                IRVariable res = ins.getResult();
+                var lhs = buffer.getValue(idx, 0);
+                var rhs = buffer.getValue(idx, 1);
+                IRVariable res = context.getVariable(buffer.getResult(idx));
                 if (lhs instanceof IRImmediate immLhs && rhs instanceof IRImmediate immRhs) {
                     // 操作两个立即数的情况
                     final var lhsVal = immLhs.getValue();
                     final var rhsVal = immRhs.getValue();
-                    IRVariable irVar = IRVariable.temp();
+                    IRVariable irVar = temps.temp();
                     switch (insKind) {
                         case ADD -> preprocessedInstructions.add(Instruction.createMov(irVar, IRImmediate.of(lhsVal + rhsVal)));
                         case SUB -> preprocessedInstructions.add(Instruction.createMov(irVar, IRImmediate.of(lhsVal - rhsVal)));
@@ -64,7 +77,7 @@ public class AssemblyGenerator {
                     // 操作一个立即数的情况
                     if (insKind.equals(InstructionKind.MUL)) {
                         // 一个立即数的乘法
-                        var irVar = IRVariable.temp();
+                        var irVar = temps.temp();
                         insCnt += 2;
                         if (lhs instanceof IRImmediate immLhs) {
                             preprocessedInstructions.add(Instruction.createMov(irVar, IRImmediate.of(immLhs.getValue())));
@@ -81,7 +94,7 @@ public class AssemblyGenerator {
                     }
                     else if ((lhs instanceof IRImmediate immLhs && insKind.equals(InstructionKind.SUB))) {
                         // 左立即数减法
-                        var irVar = IRVariable.temp();
+                        var irVar = temps.temp();
                         insCnt += 2;
                         preprocessedInstructions.add(Instruction.createMov(irVar, IRImmediate.of(immLhs.getValue())));
                         preprocessedInstructions.add(Instruction.createSub(res, irVar, rhs));
@@ -96,12 +109,12 @@ public class AssemblyGenerator {
                                     preprocessedInstructions.add(Instruction.createAdd(res, rhs, IRImmediate.of(immLhs.getValue())));
                                     varLastUse.put((IRVariable) rhs, insCnt);
                                 } else {
-                                    preprocessedInstructions.add(ins);
+                                    preprocessedInstructions.add(buffer.getInstruction(idx));
                                     varLastUse.put((IRVariable) lhs, insCnt);
                                 }
                             }
                             case SUB -> {
-                                preprocessedInstructions.add(ins);
+                                preprocessedInstructions.add(buffer.getInstruction(idx));
                                 varLastUse.put((IRVariable) lhs, insCnt);
                             }
                         }
@@ -110,27 +123,27 @@ public class AssemblyGenerator {
                 } else {
                     // 没有立即数的情况
                     insCnt++;
-                    preprocessedInstructions.add(ins);
+                    preprocessedInstructions.add(buffer.getInstruction(idx));
                     varLastUse.put((IRVariable) rhs, insCnt);
                     varLastUse.put((IRVariable) lhs, insCnt);
                     varLastUse.put(res, insCnt);
                 }
             } else {
                 // 一个操作数的指令
-                preprocessedInstructions.add(ins);
+                preprocessedInstructions.add(buffer.getInstruction(idx));
                 insCnt++;
                 // 这里不使用switch是为了遇到return直接break出for循环
                 if (insKind.equals(InstructionKind.RET)) {
-                    var ret = ins.getReturnValue();
+                    var ret = buffer.getValue(idx, 0);
                     if (ret.isIRVariable()) {
                         varLastUse.put((IRVariable) ret, insCnt);
                     }
                     break;
                 } else if (insKind.equals(InstructionKind.MOV)) {
-                    var fromVal = ins.getFrom();
+                    var fromVal = buffer.getValue(idx, 0);
                     if (fromVal.isIRVariable()) {
                         varLastUse.put((IRVariable) fromVal, insCnt);
-                        varLastUse.put(ins.getResult(), insCnt);
+                        varLastUse.put(context.getVariable(buffer.getResult(idx)), insCnt);
                     }
                 }
             }
@@ -224,12 +237,11 @@ public class AssemblyGenerator {
                 }
                 case RET -> {
                     var retVal = ins.getReturnValue();
-                    riscIns.append("mv a0")
-                            .append(", ");
                     if (retVal.isImmediate()) {
-                        riscIns.append(retVal);
+                        // 常量折叠后返回值可能是立即数
+                        riscIns.append("li a0, ").append(retVal);
                     } else {
-                        riscIns.append(getReg(insCnt, retVal));
+                        riscIns.append("mv a0, ").append(getReg(insCnt, retVal));
                     }
                     riscInstructions.add(riscIns.toString());
                 }
@@ -256,6 +268,13 @@ public class AssemblyGenerator {
 
     }
 
+    /**
+     * @return 生成的汇编指令, 不含 .text 头
+     */
+    public List<String> getAssembly() {
+        return Collections.unmodifiableList(riscInstructions);
+    }
+
     public AssemblyGenerator() {
         preprocessedInstructions = new ArrayList<>();
         riscFreeRegs = new ArrayDeque<>(Arrays.asList("t0", "t1", "t2", "t3", "t4", "t5", "t6"));
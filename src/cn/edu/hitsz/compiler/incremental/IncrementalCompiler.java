@@ -0,0 +1,605 @@
+package cn.edu.hitsz.compiler.incremental;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRContext;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.RecordingProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 增量编译器, 供编辑器在每次修改源代码后调用
+ * <br>
+ * 文法中的程序是以 Semicolon 结尾的语句序列 (S_list -> S Semicolon S_list | S Semicolon), 而 S_list 是右递归的,
+ * 所以整个程序的规约序列恰好是各条语句的规约序列依次拼接, 再接上 S_list -> S Semicolon 一次, S_list -> S Semicolon S_list
+ * (语句数 - 1) 次与 P -> S_list. 各条语句的语义动作与 IR 也互不依赖 (声明只影响符号表中条目的类型).
+ * <br>
+ * 因此此类以 ';' 为界把源代码切分为语句, 为每条语句分别保存词法单元, 规约序列, IR 以及它引用和声明的标识符.
+ * 源代码被修改时只找出与改动区间相交的语句, 对这几条语句重新做词法分析, 语法分析, 语义分析与 IR 生成, 其余语句的结果原样保留;
+ * 符号表则由各语句登记的标识符与声明按引用计数维护. 语句的文本就是源代码本身, 不另存整个文件; 由位置找到所在语句借助各语句长度的
+ * 树状数组 ({@link OffsetIndex}), 只需 O(log n). 因此单次修改的开销与改动涉及的语句数成正比, 与文件大小无关
+ * (改动使语句数变化时还要在语句列表中插入删除, 并重建长度索引, 二者都只是对 n 个元素的一趟线性扫描).
+ * <br>
+ * 输出各种结果时才把各语句的结果依次写入文件. 每条语句的输出文本只在第一次输出时生成一次, 之后原样写出, 不再为整个程序构造
+ * 词法单元, 产生式与指令的列表. 此类还记录自上次输出以来哪些结果确实变了 (例如只改动空白时词法单元, 规约序列与 IR 都不变),
+ * {@link #dump()} 只重新输出变了的文件.
+ * <br>
+ * 模拟执行与生成汇编的开销与整个程序的大小成正比, 不随 {@link #dump()} 进行, 只在调用 {@link #execute()} 时进行.
+ * <br>
+ * 与 Main 一样, 换行符视作空白. 每条语句的 IR 在各自的 {@link IRContext} 中生成, 拼接时依次搬入同一个上下文,
+ * 因此临时变量的编号与对整个文件运行 Main 的结果相同.
+ *
+ * @see IncrementalWatcher 监视源文件并在其改动后增量编译的命令行程序
+ */
+public class IncrementalCompiler {
+    /**
+     * @param lrTable LR 分析表
+     */
+    public IncrementalCompiler(LRTable lrTable) {
+        this.lrTable = lrTable;
+        final var productions = GrammarInfo.getProductionsInOrder();
+        // 产生式的 index 即其在 grammar.txt 中的行号
+        this.lastStatementProduction = productions.get(2); // S_list -> S Semicolon
+        this.moreStatementsProduction = productions.get(1); // S_list -> S Semicolon S_list
+    }
+
+    /**
+     * @return 源代码的长度
+     */
+    public int length() {
+        return offsets.total();
+    }
+
+    /**
+     * @return 以 ';' 为界切分出的语句数
+     */
+    public int getStatementCount() {
+        return statements.size();
+    }
+
+    /**
+     * 将源代码中 [start, end) 区间内的文本替换为 replacement. 第一次调用时以 edit(0, 0, 源代码) 载入整个文件
+     *
+     * @param start       区间起点
+     * @param end         区间终点 (不含)
+     * @param replacement 替换成的文本
+     * @return 重新编译的语句数
+     */
+    public int edit(int start, int end, String replacement) {
+        if (start < 0 || start > end || end > length()) {
+            throw new RuntimeException("Invalid edit range [%d, %d) for source of length %d".formatted(start, end, length()));
+        }
+
+        // 找到起点所在的语句; 起点恰为某条语句的开头时, 插入的文本属于这条语句.
+        // 只有最后一条语句可能不以 ';' 结尾, 在文件末尾插入的文本与它相连
+        var first = offsets.find(start);
+        if (first == statements.size() && first > 0 && !statements.get(first - 1).text.endsWith(";")) {
+            first--;
+        }
+        final var regionStart = offsets.prefix(first);
+        // 找到终点 (不含) 所在的语句, 区间 [first, last) 内的语句将被重新切分; 至少包含起点所在的语句
+        var last = first < statements.size() ? Math.max(first + 1, end > 0 ? offsets.find(end - 1) + 1 : 0) : first;
+
+        final var region = new StringBuilder();
+        for (int idx = first; idx < last; idx++) {
+            region.append(statements.get(idx).text);
+        }
+        region.replace(start - regionStart, end - regionStart, replacement);
+
+        // 改动删去了区间末尾的 ';' 时, 剩余部分与下一条语句合并
+        while (last < statements.size() && (region.isEmpty() || region.charAt(region.length() - 1) != ';')) {
+            region.append(statements.get(last).text);
+            last++;
+        }
+
+        // 按 ';' 重新切分, 文本未变的语句直接沿用
+        final var reusable = new HashMap<String, Statement>();
+        for (int idx = first; idx < last; idx++) {
+            final var statement = statements.get(idx);
+            retract(statement);
+            reusable.putIfAbsent(statement.text, statement);
+        }
+
+        final var replaced = new ArrayList<Statement>();
+        var recompiled = 0;
+        var pieceStart = 0;
+        while (pieceStart < region.length()) {
+            final var semicolon = region.indexOf(";", pieceStart);
+            final var pieceEnd = semicolon < 0 ? region.length() : semicolon + 1;
+            final var text = region.substring(pieceStart, pieceEnd);
+
+            var statement = reusable.remove(text);
+            if (statement == null) {
+                statement = compile(text);
+                recompiled++;
+            }
+            replaced.add(statement);
+            pieceStart = pieceEnd;
+        }
+
+        final var tail = statements.subList(first, last);
+        final var removed = List.copyOf(tail);
+        markChanges(removed, replaced);
+        tail.clear();
+        tail.addAll(replaced);
+        replaced.forEach(this::register);
+
+        if (replaced.size() == last - first) {
+            // 语句的下标不变, 只需更新长度有变化的几条
+            for (int idx = 0; idx < replaced.size(); idx++) {
+                offsets.add(first + idx, replaced.get(idx).text.length() - removed.get(idx).text.length());
+            }
+        } else {
+            offsets.reset(statements.size(), idx -> statements.get(idx).text.length());
+        }
+        return recompiled;
+    }
+
+    /**
+     * @return 整个源代码的词法单元, 以 EOF 结尾
+     */
+    public List<Token> getTokens() {
+        final var tokens = new ArrayList<Token>();
+        statements.forEach(statement -> tokens.addAll(statement.tokens));
+        tokens.add(Token.eof());
+        return tokens;
+    }
+
+    /**
+     * @param withTypes 是否填入声明的类型, 为 false 时相当于词法分析后的符号表
+     * @return 整个源代码的符号表
+     */
+    public SymbolTable getSymbolTable(boolean withTypes) {
+        final var table = new SymbolTable();
+        for (final var identifier : identifiers.keySet()) {
+            final var entry = table.add(identifier);
+            final var type = declaredTypes.get(identifier);
+            if (withTypes && type != null) {
+                entry.setType(type);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return 整个程序按规约顺序排列的产生式
+     * @throws RuntimeException 源代码中有错误
+     */
+    public List<Production> getReducedProductions() {
+        ensureNoError();
+
+        final var result = new ArrayList<Production>();
+        statements.forEach(statement -> result.addAll(statement.reductions));
+
+        result.add(lastStatementProduction);
+        for (int idx = 1; idx < nonBlankStatements; idx++) {
+            result.add(moreStatementsProduction);
+        }
+        result.add(GrammarInfo.getBeginProduction());
+        return result;
+    }
+
+    /**
+     * @return 整个程序的 IR, 即各语句的 IR 依次拼接
+     * @throws RuntimeException 源代码中有错误
+     */
+    public List<Instruction> getIR() {
+        ensureNoError();
+
+        final var context = new IRContext();
+        final var result = new ArrayList<Instruction>();
+        statements.forEach(statement -> result.addAll(context.adopt(statement.context, statement.instructions)));
+        return result;
+    }
+
+    /**
+     * @return 整个程序的 IR, 以 {@link IRBuffer} 的形式
+     * @throws RuntimeException 源代码中有错误
+     */
+    public IRBuffer getBuffer() {
+        ensureNoError();
+
+        final var buffer = new IRBuffer(new IRContext());
+        for (final var statement : statements) {
+            buffer.getContext().adopt(statement.context, statement.instructions).forEach(buffer::add);
+        }
+        return buffer;
+    }
+
+    /**
+     * 与 Main 一样输出词法分析, 语法分析, 语义分析与 IR 生成的结果. 只重新输出自上次输出以来变了的结果
+     *
+     * @return 是否输出了任何文件
+     * @throws RuntimeException 源代码中有错误, 此时仍会输出词法分析的结果
+     */
+    public boolean dump() {
+        final var changed = lexicalChanged || syntaxChanged || irChanged;
+        if (lexicalChanged) {
+            write(FilePathConfig.TOKEN_PATH, writer -> {
+                for (final var statement : statements) {
+                    writer.write(statement.tokenLines());
+                }
+                writer.write(Token.eof().toString());
+                writer.write(System.lineSeparator());
+            });
+            getSymbolTable(false).dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+            lexicalChanged = false;
+        }
+
+        if (syntaxChanged) {
+            ensureNoError();
+            write(FilePathConfig.PARSER_PATH, writer -> {
+                for (final var statement : statements) {
+                    writer.write(statement.reductionLines());
+                }
+                writer.write(lastStatementProduction + System.lineSeparator());
+                final var more = moreStatementsProduction + System.lineSeparator();
+                for (int idx = 1; idx < nonBlankStatements; idx++) {
+                    writer.write(more);
+                }
+                writer.write(GrammarInfo.getBeginProduction() + System.lineSeparator());
+            });
+            getSymbolTable(true).dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
+            syntaxChanged = false;
+        }
+
+        if (irChanged) {
+            ensureNoError();
+            write(FilePathConfig.INTERMEDIATE_CODE_PATH, writer -> {
+                // 各语句的临时变量在自己的上下文中从 $0 开始编号, 拼接后依次排在之前各语句的临时变量之后
+                var temps = 0;
+                for (final var statement : statements) {
+                    writeRenumbered(writer, statement.instructionLines(), temps);
+                    temps += statement.temps;
+                }
+            });
+            irChanged = false;
+        }
+        return changed;
+    }
+
+    /**
+     * 与 Main 一样以 {@link IREmulator.Engine#RegisterFile} 模拟执行整个程序的 IR 并生成汇编. 开销与程序的大小成正比,
+     * 由调用者决定何时需要; 自上次调用以来 IR 没有变化时什么也不做
+     *
+     * @return 是否输出了任何文件
+     * @throws RuntimeException 源代码中有错误
+     */
+    public boolean execute() {
+        if (!executionStale) {
+            return false;
+        }
+
+        final var buffer = getBuffer();
+        final var result = IREmulator.load(buffer, IREmulator.Engine.RegisterFile).execute();
+        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, result.map(Objects::toString).orElse("No return value"));
+
+        final var asmGenerator = new AssemblyGenerator();
+        asmGenerator.loadIR(buffer);
+        asmGenerator.run();
+        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        executionStale = false;
+        return true;
+    }
+
+    /**
+     * 以 ';' 为界切分出的一段源代码及其编译结果. 末尾没有 ';' 的一段 (通常只含空白) 也作为一条语句保存
+     */
+    private static final class Statement {
+        private final String text;
+        private final List<Token> tokens;
+        private final List<String> identifiers;
+        private final Map<String, SourceCodeType> declarations;
+        // 不含末尾的 S_list -> S Semicolon 与 P -> S_list
+        private final List<Production> reductions;
+        private final List<Instruction> instructions;
+        // instructions 中的变量所属的上下文
+        private final IRContext context;
+        // 编译出错时的异常, 为 null 时表示没有错误
+        private final RuntimeException error;
+        // context 中的临时变量数
+        private final int temps;
+
+        private Statement(String text, List<Token> tokens, List<String> identifiers, Map<String, SourceCodeType> declarations,
+                          List<Production> reductions, List<Instruction> instructions, IRContext context, RuntimeException error) {
+            this.text = text;
+            this.tokens = tokens;
+            this.identifiers = identifiers;
+            this.declarations = declarations;
+            this.reductions = reductions;
+            this.instructions = instructions;
+            this.context = context;
+            this.error = error;
+            this.temps = (int) context.getVariables().stream().filter(IRVariable::isTemp).count();
+        }
+
+        private boolean isBlank() {
+            return tokens.isEmpty() && error == null;
+        }
+
+        /**
+         * @return 各词法单元的输出文本, 每个一行
+         */
+        private String tokenLines() {
+            if (tokenLines == null) {
+                tokenLines = lines(tokens);
+            }
+            return tokenLines;
+        }
+
+        /**
+         * @return 各产生式的输出文本, 每个一行
+         */
+        private String reductionLines() {
+            if (reductionLines == null) {
+                reductionLines = lines(reductions);
+            }
+            return reductionLines;
+        }
+
+        /**
+         * @return 各指令的输出文本, 每条一行, 临时变量为本语句的上下文中的编号
+         */
+        private String instructionLines() {
+            if (instructionLines == null) {
+                instructionLines = lines(instructions);
+            }
+            return instructionLines;
+        }
+
+        private static String lines(List<?> items) {
+            final var text = new StringBuilder();
+            for (final var item : items) {
+                text.append(item).append(System.lineSeparator());
+            }
+            return text.toString();
+        }
+
+        // 输出文本, 第一次输出时才生成
+        private String tokenLines = null;
+        private String reductionLines = null;
+        private String instructionLines = null;
+    }
+
+    @FunctionalInterface
+    private interface Output {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private static void write(String path, Output output) {
+        try (final var writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            output.writeTo(writer);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path);
+        }
+    }
+
+    /**
+     * 写出一条语句的指令, 其中的临时变量 $n 改为 $(base + n)
+     */
+    private static void writeRenumbered(Writer writer, String text, int base) throws IOException {
+        var from = 0;
+        for (int idx = text.indexOf('$'); idx >= 0; idx = text.indexOf('$', from)) {
+            var end = idx + 1;
+            while (end < text.length() && text.charAt(end) >= '0' && text.charAt(end) <= '9') {
+                end++;
+            }
+            writer.write(text, from, idx + 1 - from);
+            writer.write(Integer.toString(base + Integer.parseInt(text, idx + 1, end, 10)));
+            from = end;
+        }
+        writer.write(text, from, text.length() - from);
+    }
+
+    /**
+     * 编译一段以 ';' 结尾的源代码, 将其作为只有一条语句的程序处理
+     */
+    private Statement compile(String text) {
+        final var symbolTable = new SymbolTable();
+        final var tokens = new ArrayList<Token>();
+        try {
+            final var lexer = new LexicalAnalyzer(symbolTable);
+            lexer.loadSource(text);
+            lexer.run();
+            lexer.getTokens().forEach(tokens::add);
+        } catch (RuntimeException e) {
+            return new Statement(text, List.of(), List.of(), Map.of(), List.of(), List.of(), NO_IR, e);
+        }
+
+        // 去掉 EOF, 以便拼接
+        tokens.remove(tokens.size() - 1);
+        final var identifiers = tokens.stream().filter(token -> "id".equals(token.getKindId())).map(Token::getText).distinct().toList();
+        if (tokens.isEmpty() && !text.endsWith(";")) {
+            return new Statement(text, List.of(), List.of(), Map.of(), List.of(), List.of(), NO_IR, null);
+        }
+
+        try {
+            final var parser = new SyntaxAnalyzer(symbolTable, SyntaxAnalyzer.Mode.ChainElimination);
+            final var withEof = new ArrayList<>(tokens);
+            withEof.add(Token.eof());
+            parser.loadTokens(withEof);
+            parser.loadLRTable(lrTable);
+
+            final var productionCollector = new RecordingProductionCollector(GrammarInfo.getBeginProduction());
+            parser.registerObserver(productionCollector);
+            parser.registerObserver(new SemanticAnalyzer());
+            final var irGenerator = new IRGenerator();
+            parser.registerObserver(irGenerator);
+            parser.run();
+
+            // 单条语句构成的程序以 S_list -> S Semicolon 与 P -> S_list 结尾, 这两个规约在拼接时统一补上
+            final var reductions = productionCollector.getReducedProductions();
+            final var size = reductions.size();
+            if (size < 2 || reductions.get(size - 2) != lastStatementProduction || reductions.get(size - 1) != GrammarInfo.getBeginProduction()) {
+                throw new RuntimeException("语法分析出错");
+            }
+
+            final var declarations = new HashMap<String, SourceCodeType>();
+            for (final var identifier : identifiers) {
+                final var type = symbolTable.get(identifier).getType();
+                if (type != null) {
+                    declarations.put(identifier, type);
+                }
+            }
+            return new Statement(text, tokens, identifiers, declarations,
+                List.copyOf(reductions.subList(0, size - 2)), List.copyOf(irGenerator.getIR()), irGenerator.getContext(), null);
+        } catch (RuntimeException e) {
+            return new Statement(text, tokens, identifiers, Map.of(), List.of(), List.of(), NO_IR, e);
+        }
+    }
+
+    /**
+     * 比较被替换的语句与替换成的语句, 记下哪些输出需要在下次 {@link #dump()} 时重新生成.
+     * 只比较改动涉及的语句, 开销与文件大小无关
+     */
+    private void markChanges(List<Statement> removed, List<Statement> added) {
+        if (removed.equals(added)) {
+            return;
+        }
+        // 出错的语句会使之后的输出都变为报错, 全部重新生成
+        if (removed.stream().anyMatch(statement -> statement.error != null) || added.stream().anyMatch(statement -> statement.error != null)) {
+            lexicalChanged = syntaxChanged = irChanged = executionStale = true;
+            return;
+        }
+
+        if (!collect(removed, statement -> statement.tokens.stream().map(Token::toString).toList())
+            .equals(collect(added, statement -> statement.tokens.stream().map(Token::toString).toList()))) {
+            lexicalChanged = true;
+        }
+        // 新的符号表同时依赖于标识符与声明; 空语句的增减会改变拼接时补上的规约
+        if (lexicalChanged
+            || removed.stream().filter(statement -> !statement.isBlank()).count() != added.stream().filter(statement -> !statement.isBlank()).count()
+            || !collect(removed, statement -> statement.reductions).equals(collect(added, statement -> statement.reductions))
+            || !collect(removed, statement -> List.of(statement.declarations)).equals(collect(added, statement -> List.of(statement.declarations)))) {
+            syntaxChanged = true;
+        }
+        if (!collect(removed, statement -> statement.instructions.stream().map(Instruction::toString).toList())
+            .equals(collect(added, statement -> statement.instructions.stream().map(Instruction::toString).toList()))) {
+            irChanged = executionStale = true;
+        }
+    }
+
+    /**
+     * @return 各语句的某项结果依次拼接
+     */
+    private static <T> List<T> collect(List<Statement> statements, Function<Statement, List<T>> part) {
+        final var result = new ArrayList<T>();
+        statements.forEach(statement -> result.addAll(part.apply(statement)));
+        return result;
+    }
+
+    /**
+     * 将语句引用与声明的标识符计入符号表
+     */
+    private void register(Statement statement) {
+        statement.identifiers.forEach(identifier -> identifiers.merge(identifier, 1, Integer::sum));
+        statement.declarations.forEach((identifier, type) -> {
+            if (declarationCounts.merge(identifier, 1, Integer::sum) > 1) {
+                redeclarations++;
+            }
+            // 源语言中只有 int 一种类型, 重复声明时不必区分保留哪一个
+            declaredTypes.put(identifier, type);
+        });
+        if (statement.error != null) {
+            errors++;
+        }
+        if (!statement.isBlank()) {
+            nonBlankStatements++;
+        }
+    }
+
+    /**
+     * 撤销 {@link #register(Statement)}
+     */
+    private void retract(Statement statement) {
+        statement.identifiers.forEach(identifier -> identifiers.computeIfPresent(identifier, (key, count) -> count == 1 ? null : count - 1));
+        statement.declarations.forEach((identifier, type) -> {
+            final var count = declarationCounts.get(identifier);
+            if (count > 1) {
+                declarationCounts.put(identifier, count - 1);
+                redeclarations--;
+            } else {
+                declarationCounts.remove(identifier);
+                declaredTypes.remove(identifier);
+            }
+        });
+        if (statement.error != null) {
+            errors--;
+        }
+        if (!statement.isBlank()) {
+            nonBlankStatements--;
+        }
+    }
+
+    /**
+     * 源代码有错误时抛出第一个错误, 与对整个文件运行 Main 时一样
+     */
+    private void ensureNoError() {
+        if (errors > 0) {
+            for (final var statement : statements) {
+                if (statement.error != null) {
+                    throw statement.error;
+                }
+            }
+        }
+        if (redeclarations > 0) {
+            throw new RuntimeException("Can NOT set type for an entry twice");
+        }
+        // 没有任何语句的程序不符合文法
+        if (nonBlankStatements == 0) {
+            throw new RuntimeException("语法分析出错");
+        }
+    }
+
+    // 不含任何指令的语句共用的空上下文
+    private static final IRContext NO_IR = new IRContext();
+
+    private final LRTable lrTable;
+    private final Production lastStatementProduction;
+    private final Production moreStatementsProduction;
+
+    private final List<Statement> statements = new ArrayList<>();
+    // 各语句长度的索引, 与 statements 一一对应
+    private final OffsetIndex offsets = new OffsetIndex();
+    // 标识符 -> 引用它的语句数
+    private final Map<String, Integer> identifiers = new HashMap<>();
+    // 标识符 -> 声明它的语句数与声明的类型
+    private final Map<String, Integer> declarationCounts = new HashMap<>();
+    private final Map<String, SourceCodeType> declaredTypes = new HashMap<>();
+    // 重复声明的次数与出错的语句数, 均为 0 时才能输出结果
+    private int redeclarations = 0;
+    private int errors = 0;
+    // 不是空白的语句数, 即参与拼接规约序列的语句数
+    private int nonBlankStatements = 0;
+    // 自上次 dump 以来, 词法分析 (token 与旧符号表), 语法与语义分析 (规约序列与新符号表), IR (及执行结果与汇编) 的结果是否变了
+    private boolean lexicalChanged = true;
+    private boolean syntaxChanged = true;
+    private boolean irChanged = true;
+    // 自上次 execute 以来 IR 是否变了
+    private boolean executionStale = true;
+}
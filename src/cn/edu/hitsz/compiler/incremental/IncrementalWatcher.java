@@ -0,0 +1,131 @@
+package cn.edu.hitsz.compiler.incremental;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+
+/**
+ * 监视源文件, 每次文件被修改后用 {@link IncrementalCompiler} 增量更新, 并重新输出 data/out 下变了的文件
+ * <br>
+ * 通过 {@link java.nio.file.WatchService} 等待文件所在目录的事件, 不轮询. 编辑器只会整体保存文件, 因此这里保留上一次读到的文本,
+ * 与新文本比较公共前缀与后缀, 得出改动的区间后交给 {@link IncrementalCompiler#edit(int, int, String)}.
+ * <br>
+ * 默认只输出词法分析到 IR 生成的结果. 模拟执行与生成汇编要处理整个程序, 加上 --execute 时才在每次修改后进行.
+ * <br>
+ * 命令行用法 (在仓库根目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.incremental.IncrementalWatcher [--execute]
+ * </pre>
+ */
+public class IncrementalWatcher {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var execute = false;
+        for (final var arg : args) {
+            if (!"--execute".equals(arg)) {
+                throw new RuntimeException("Unknown option: " + arg);
+            }
+            execute = true;
+        }
+
+        TokenKind.loadTokenKinds();
+        final var watcher = new IncrementalWatcher(Paths.get(FilePathConfig.SRC_CODE_PATH),
+            new IncrementalCompiler(TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH)), execute);
+        watcher.run();
+    }
+
+    /**
+     * @param path     源文件路径
+     * @param compiler 增量编译器, 应尚未载入任何源代码
+     * @param execute  每次修改后是否还要模拟执行并生成汇编
+     */
+    public IncrementalWatcher(Path path, IncrementalCompiler compiler, boolean execute) {
+        this.path = path.toAbsolutePath();
+        this.compiler = compiler;
+        this.execute = execute;
+    }
+
+    /**
+     * 编译一次当前的文件, 之后每当文件被修改就增量更新, 直到线程被中断
+     */
+    public void run() throws IOException, InterruptedException {
+        try (final var service = FileSystems.getDefault().newWatchService()) {
+            path.getParent().register(service,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // 先注册再读取, 不会漏掉两者之间的修改
+            reload();
+
+            while (true) {
+                final var key = service.take();
+                var touched = false;
+                for (final var event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context())) {
+                        touched = true;
+                    }
+                }
+                if (touched) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    throw new IOException("Directory of %s is no longer accessible".formatted(path));
+                }
+            }
+        }
+    }
+
+    /**
+     * 读入文件, 找出与上一次读到的文本不同的区间并增量更新
+     */
+    private void reload() throws IOException {
+        final String text;
+        try {
+            text = Files.readString(path);
+        } catch (IOException e) {
+            // 编辑器保存时可能先删除再创建文件, 等下一个事件再读
+            return;
+        }
+
+        final var maxCommon = Math.min(previous.length(), text.length());
+        var prefix = 0;
+        while (prefix < maxCommon && previous.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        var suffix = 0;
+        while (suffix < maxCommon - prefix
+            && previous.charAt(previous.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == previous.length() && prefix == text.length()) {
+            return;
+        }
+
+        // 计时包括输出文件, 即保存后到结果更新所需的全部时间
+        final var start = System.nanoTime();
+        final var recompiled = compiler.edit(prefix, previous.length() - suffix, text.substring(prefix, text.length() - suffix));
+        previous = text;
+
+        var changed = false;
+        try {
+            changed = compiler.dump();
+            if (execute) {
+                changed |= compiler.execute();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Compile error: " + e.getMessage());
+        }
+        System.out.printf("Recompiled %d of %d statements in %.3f ms%s%n", recompiled, compiler.getStatementCount(),
+            (System.nanoTime() - start) / 1e6, changed ? "" : ", output unchanged");
+    }
+
+    private final Path path;
+    private final IncrementalCompiler compiler;
+    private final boolean execute;
+    // 上一次读到的文件内容, 用于找出改动的区间
+    private String previous = "";
+}
@@ -0,0 +1,86 @@
+package cn.edu.hitsz.compiler.incremental;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 各语句长度的树状数组 (Fenwick tree), 用于在 O(log n) 内由源代码中的位置找到所在的语句, 或由语句求出它的起点
+ * <br>
+ * 语句的长度改变时只需 {@link #add(int, int)}; 语句数改变时各语句的下标随之移动, 需要用 {@link #reset(int, IntUnaryOperator)} 重建,
+ * 开销是对各语句长度的一趟线性扫描.
+ */
+final class OffsetIndex {
+    /**
+     * 以 n 条语句的长度重建索引
+     *
+     * @param size     语句数
+     * @param lengthOf 下标 -> 语句长度
+     */
+    void reset(int size, IntUnaryOperator lengthOf) {
+        if (tree.length < size + 1) {
+            tree = new int[Math.max(size + 1, tree.length * 2)];
+        } else {
+            Arrays.fill(tree, 0, size + 1, 0);
+        }
+        this.size = size;
+
+        // 线性建树: 每个结点算完后把自己的和加到父结点上
+        for (int node = 1; node <= size; node++) {
+            tree[node] += lengthOf.applyAsInt(node - 1);
+            final var parent = node + (node & -node);
+            if (parent <= size) {
+                tree[parent] += tree[node];
+            }
+        }
+    }
+
+    /**
+     * @param index 语句下标
+     * @param delta 该语句长度的变化量
+     */
+    void add(int index, int delta) {
+        for (int node = index + 1; node <= size; node += node & -node) {
+            tree[node] += delta;
+        }
+    }
+
+    /**
+     * @param count 语句数
+     * @return 前 count 条语句的总长度, 即下标为 count 的语句的起点
+     */
+    int prefix(int count) {
+        var sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /**
+     * @return 所有语句的总长度
+     */
+    int total() {
+        return prefix(size);
+    }
+
+    /**
+     * @param offset 源代码中的位置
+     * @return 包含该位置的语句的下标; offset 不小于总长度时为语句数
+     */
+    int find(int offset) {
+        // 自高位向低位确定: 前 index 条语句的总长度不超过 offset 的最大 index
+        var index = 0;
+        var remaining = offset;
+        for (int step = Integer.highestOneBit(Math.max(size, 1)); step > 0; step >>= 1) {
+            final var next = index + step;
+            if (next <= size && tree[next] <= remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return index;
+    }
+
+    private int[] tree = new int[16];
+    private int size = 0;
+}
@@ -0,0 +1,152 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IR 上的常量传播与常量折叠
+ * <br>
+ * 分两趟进行:
+ * <ul>
+ *     <li>正向: 记录每个变量当前的常量值, 经 MOV 与具名变量传播, 读取已知值的变量时换成立即数, 两个操作数都已知的 ADD/SUB/MUL
+ *     直接算出结果并改为 MOV</li>
+ *     <li>反向: 删去结果之后不再被读取的赋值, 以及除最后一条以外的 RET (RET 之后程序仍继续执行, 只有最后一次返回的值有效)</li>
+ * </ul>
+ * 源语言中没有输入, 合法的程序中每个变量在被读取时都已赋值且值已知, 因此整个程序会折叠为一条返回常量的 RET.
+ * <br>
+ * 与 {@link cn.edu.hitsz.compiler.utils.IREmulator} 的语义保持一致: 未赋值的变量的值为 null. 以它作为 MOV 的源时,
+ * 这条 MOV 原样保留, 目标也成为未赋值; 以它作为返回值时, 这条 RET 也原样保留; 以它参与运算时执行到此处就会出错,
+ * 这条指令 (已知的操作数换成立即数) 原样保留, 之后的指令不可能被执行, 直接丢弃. 因此折叠后的 IR 的执行结果
+ * (包括是否出错) 与原 IR 相同.
+ */
+public class ConstantFolder {
+    /**
+     * @param instructions IR
+     * @return 折叠后的 IR, 其中的变量与原 IR 中的同名变量相等
+     */
+    public static List<Instruction> fold(List<Instruction> instructions) {
+        return new ArrayList<>(fold(IRBuffer.of(instructions)).asInstructions());
+    }
+
+    /**
+     * @param buffer IR
+     * @return 折叠后的 IR, 与原 IR 共用同一个上下文
+     */
+    public static IRBuffer fold(IRBuffer buffer) {
+        return eliminateDeadCode(propagate(buffer));
+    }
+
+    /**
+     * 正向传播常量, 遇到以未赋值的变量参与运算的指令时停止
+     */
+    private static IRBuffer propagate(IRBuffer buffer) {
+        final var context = buffer.getContext();
+        // 以变量编号为下标: 当前是否有已知的值, 以及这个值. 没有已知值的变量即为未赋值
+        final var known = new boolean[context.getVariableCount()];
+        final var values = new int[context.getVariableCount()];
+        final var result = new IRBuffer(context);
+
+        for (int idx = 0; idx < buffer.size(); idx++) {
+            final var kind = buffer.getKind(idx);
+            switch (kind) {
+                case MOV -> {
+                    final var target = buffer.getResult(idx);
+                    known[target] = isKnown(buffer, idx, 0, known);
+                    if (known[target]) {
+                        values[target] = valueOf(buffer, idx, 0, values);
+                        result.addMov(context.getVariable(target), IRImmediate.of(values[target]));
+                    } else {
+                        result.add(buffer.getInstruction(idx));
+                    }
+                }
+
+                case ADD, SUB, MUL -> {
+                    final var target = buffer.getResult(idx);
+                    if (!isKnown(buffer, idx, 0, known) || !isKnown(buffer, idx, 1, known)) {
+                        // 执行到此处必然出错
+                        result.addBinary(kind, context.getVariable(target),
+                            substitute(buffer, idx, 0, known, values), substitute(buffer, idx, 1, known, values));
+                        return result;
+                    }
+
+                    final var lhs = valueOf(buffer, idx, 0, values);
+                    final var rhs = valueOf(buffer, idx, 1, values);
+                    values[target] = switch (kind) {
+                        case ADD -> lhs + rhs;
+                        case SUB -> lhs - rhs;
+                        default -> lhs * rhs;
+                    };
+                    known[target] = true;
+                    result.addMov(context.getVariable(target), IRImmediate.of(values[target]));
+                }
+
+                case RET -> result.addRet(substitute(buffer, idx, 0, known, values));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 反向扫描, 只保留对最后的执行结果有影响的指令
+     */
+    private static IRBuffer eliminateDeadCode(IRBuffer buffer) {
+        // 以变量编号为下标, 之后是否会被读取
+        final var live = new boolean[buffer.getContext().getVariableCount()];
+        final var kept = new boolean[buffer.size()];
+        // 之后是否已有决定执行结果的指令: RET, 或者必然出错的运算
+        var finished = false;
+
+        for (int idx = buffer.size() - 1; idx >= 0; idx--) {
+            final var kind = buffer.getKind(idx);
+            if (kind == InstructionKind.MOV) {
+                kept[idx] = live[buffer.getResult(idx)];
+                live[buffer.getResult(idx)] = false;
+            } else {
+                // 经过正向传播后留下的运算都是必然出错的
+                kept[idx] = !finished;
+                finished = true;
+            }
+
+            if (kept[idx]) {
+                final var operands = kind.isBinary() ? 2 : 1;
+                for (int operand = 0; operand < operands; operand++) {
+                    if (!buffer.isImmediate(idx, operand)) {
+                        live[buffer.getOperand(idx, operand)] = true;
+                    }
+                }
+            }
+        }
+
+        final var result = new IRBuffer(buffer.getContext());
+        for (int idx = 0; idx < buffer.size(); idx++) {
+            if (kept[idx]) {
+                result.add(buffer.getInstruction(idx));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isKnown(IRBuffer buffer, int index, int operand, boolean[] known) {
+        return buffer.isImmediate(index, operand) || known[buffer.getOperand(index, operand)];
+    }
+
+    /**
+     * @return 已知值的操作数的值, 须先用 {@link #isKnown} 判断
+     */
+    private static int valueOf(IRBuffer buffer, int index, int operand, int[] values) {
+        final var value = buffer.getOperand(index, operand);
+        return buffer.isImmediate(index, operand) ? value : values[value];
+    }
+
+    /**
+     * @return 已知值的操作数换成立即数, 否则为原来的变量
+     */
+    private static IRValue substitute(IRBuffer buffer, int index, int operand, boolean[] known, int[] values) {
+        return isKnown(buffer, index, operand, known)
+            ? IRImmediate.of(valueOf(buffer, index, operand, values))
+            : buffer.getValue(index, operand);
+    }
+
+    private ConstantFolder() {
+    }
+}
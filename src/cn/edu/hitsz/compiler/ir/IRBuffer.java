@@ -0,0 +1,233 @@
+package cn.edu.hitsz.compiler.ir;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 以平行数组存放的 IR
+ * <br>
+ * 与 {@code List<Instruction>} 相比, 每条指令不再是一个对象加一个操作数列表, 而是各数组中同一下标处的几个 int:
+ * 指令种类, 结果变量的编号, 以及至多两个操作数. 操作数或者是变量在 {@link IRContext} 中的编号, 或者直接就是立即数的值,
+ * 二者由每条指令的一个标记字节区分. 因此存放一条指令只需要十几个字节, 逐条读取时 (见 {@link #getKind(int)},
+ * {@link #getOperand(int, int)} 等) 也不会分配任何对象.
+ * <br>
+ * 操作数的序号: 二元指令的 0 与 1 分别为左右操作数, MOV 的 0 为源操作数, RET 的 0 为返回值.
+ * <br>
+ * 需要 {@link Instruction} 对象时可以用 {@link #getInstruction(int)} 或 {@link #asInstructions()} 临时构造.
+ */
+public class IRBuffer {
+    /**
+     * @param context 指令中的变量所属的上下文
+     */
+    public IRBuffer(IRContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @param instructions 已有的 IR, 其中的变量都属于 context
+     * @param context      变量所属的上下文
+     * @return 存放同样的 IR 的 IRBuffer
+     */
+    public static IRBuffer of(List<Instruction> instructions, IRContext context) {
+        final var buffer = new IRBuffer(context);
+        instructions.forEach(buffer::add);
+        return buffer;
+    }
+
+    /**
+     * @param instructions 已有的 IR, 其中的变量可以来自任意上下文, 将按名字登记到一个新的上下文中
+     * @return 存放同样的 IR 的 IRBuffer
+     */
+    public static IRBuffer of(List<Instruction> instructions) {
+        final var context = IRContext.of(instructions);
+        final var buffer = new IRBuffer(context);
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            final var result = kind == InstructionKind.RET ? null : context.lookup(instruction.getResult().getName());
+            final var operands = instruction.getOperands();
+            buffer.append(kind, result, localize(context, operands.get(0)), operands.size() > 1 ? localize(context, operands.get(1)) : null);
+        }
+        return buffer;
+    }
+
+    //============================== 追加指令 ==============================
+
+    public void add(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var operands = instruction.getOperands();
+        append(kind, kind == InstructionKind.RET ? null : instruction.getResult(), operands.get(0), operands.size() > 1 ? operands.get(1) : null);
+    }
+
+    /**
+     * @param kind   ADD, SUB 或 MUL
+     * @param result 结果变量
+     * @param lhs    左操作数
+     * @param rhs    右操作数
+     */
+    public void addBinary(InstructionKind kind, IRVariable result, IRValue lhs, IRValue rhs) {
+        if (!kind.isBinary()) {
+            throw new RuntimeException("Binary instruction expected, but given " + kind);
+        }
+        append(kind, result, lhs, rhs);
+    }
+
+    public void addMov(IRVariable result, IRValue from) {
+        append(InstructionKind.MOV, result, from, null);
+    }
+
+    public void addRet(IRValue returnValue) {
+        append(InstructionKind.RET, null, returnValue, null);
+    }
+
+    //============================== 读取指令 ==============================
+
+    /**
+     * @return 指令的条数
+     */
+    public int size() {
+        return size;
+    }
+
+    public InstructionKind getKind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    /**
+     * @param index 指令的下标
+     * @return 结果变量的编号; RET 指令没有结果变量, 为 -1
+     */
+    public int getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index   指令的下标
+     * @param operand 操作数的序号
+     * @return 该操作数为立即数时是立即数的值, 否则是变量的编号
+     */
+    public int getOperand(int index, int operand) {
+        return operand == 0 ? firstOperands[index] : secondOperands[index];
+    }
+
+    /**
+     * @param index   指令的下标
+     * @param operand 操作数的序号
+     * @return 该操作数是否为立即数
+     */
+    public boolean isImmediate(int index, int operand) {
+        return (immediateFlags[index] & (1 << operand)) != 0;
+    }
+
+    /**
+     * @return 指令中的变量所属的上下文, 用于由编号取回变量
+     */
+    public IRContext getContext() {
+        return context;
+    }
+
+    /**
+     * 构造第 index 条指令的操作数, 立即数每次都会构造新的 {@link IRImmediate} (较小的值除外)
+     */
+    public IRValue getValue(int index, int operand) {
+        final var value = getOperand(index, operand);
+        return isImmediate(index, operand) ? IRImmediate.of(value) : context.getVariable(value);
+    }
+
+    /**
+     * 构造第 index 条指令对应的 {@link Instruction}
+     */
+    public Instruction getInstruction(int index) {
+        return switch (getKind(index)) {
+            case ADD -> Instruction.createAdd(context.getVariable(results[index]), getValue(index, 0), getValue(index, 1));
+            case SUB -> Instruction.createSub(context.getVariable(results[index]), getValue(index, 0), getValue(index, 1));
+            case MUL -> Instruction.createMul(context.getVariable(results[index]), getValue(index, 0), getValue(index, 1));
+            case MOV -> Instruction.createMov(context.getVariable(results[index]), getValue(index, 0));
+            case RET -> Instruction.createRet(getValue(index, 0));
+        };
+    }
+
+    /**
+     * @return 只读的指令列表视图, 每次访问元素时都会临时构造 {@link Instruction}
+     */
+    public List<Instruction> asInstructions() {
+        return new AbstractList<>() {
+            @Override
+            public Instruction get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return getInstruction(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public void dump(String path) {
+        final var lines = new ArrayList<String>(size);
+        for (int idx = 0; idx < size; idx++) {
+            lines.add(getInstruction(idx).toString());
+        }
+        FileUtils.writeLines(path, lines);
+    }
+
+    //============================== 基础设施 ==============================
+
+    private void append(InstructionKind kind, IRVariable result, IRValue first, IRValue second) {
+        if (size == kinds.length) {
+            final var capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            results = Arrays.copyOf(results, capacity);
+            firstOperands = Arrays.copyOf(firstOperands, capacity);
+            secondOperands = Arrays.copyOf(secondOperands, capacity);
+            immediateFlags = Arrays.copyOf(immediateFlags, capacity);
+        }
+
+        kinds[size] = (byte) kind.ordinal();
+        results[size] = result == null ? IRVariable.NO_ID : idOf(result);
+        var flags = 0;
+        if (first instanceof IRImmediate immediate) {
+            firstOperands[size] = immediate.getValue();
+            flags |= 1;
+        } else {
+            firstOperands[size] = idOf((IRVariable) first);
+        }
+        if (second instanceof IRImmediate immediate) {
+            secondOperands[size] = immediate.getValue();
+            flags |= 2;
+        } else {
+            secondOperands[size] = second == null ? IRVariable.NO_ID : idOf((IRVariable) second);
+        }
+        immediateFlags[size] = (byte) flags;
+        size++;
+    }
+
+    private int idOf(IRVariable variable) {
+        final var id = variable.getId();
+        if (id == IRVariable.NO_ID || id >= context.getVariableCount() || context.getVariable(id) != variable) {
+            throw new RuntimeException("IR variable %s does not belong to the context of this buffer".formatted(variable));
+        }
+        return id;
+    }
+
+    private static IRValue localize(IRContext context, IRValue value) {
+        return value instanceof IRVariable variable ? context.lookup(variable.getName()) : value;
+    }
+
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+
+    private final IRContext context;
+    private int size = 0;
+    private byte[] kinds = new byte[16];
+    private int[] results = new int[16];
+    private int[] firstOperands = new int[16];
+    private int[] secondOperands = new int[16];
+    private byte[] immediateFlags = new byte[16];
+}
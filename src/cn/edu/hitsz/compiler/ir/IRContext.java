@@ -0,0 +1,164 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次编译过程中 IR 变量的分配者
+ * <br>
+ * 临时变量的编号来自本上下文自己的计数器, 具名变量按名字驻留, 同名的变量总是同一个对象. 每个变量 (无论临时还是具名)
+ * 在创建时按顺序获得一个从 0 开始的编号 (见 {@link IRVariable#getId()}), 因此后续各阶段可以用以编号为下标的数组代替以变量为键的 Map.
+ * <br>
+ * 此类不是线程安全的, 每个编译过程 (或并行编译中的每个线程) 各自持有一个; 不同的上下文互不影响, 可以在同一个 JVM 中同时使用.
+ */
+public class IRContext {
+    /**
+     * 为已有的 IR 构造上下文: 按出现顺序登记其中的所有变量, 之后分配的临时变量从其中最大的编号之后开始编号, 不会与已有的同名
+     *
+     * @param instructions 已有的 IR, 其中的变量可以来自任意上下文
+     * @return 新的上下文
+     */
+    public static IRContext of(List<Instruction> instructions) {
+        final var context = new IRContext();
+        for (final var instruction : instructions) {
+            if (instruction.getKind() != InstructionKind.RET) {
+                context.register(instruction.getResult());
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    context.register(variable);
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable temp() {
+        return add("$" + tempCount++);
+    }
+
+    /**
+     * 派生一个新的上下文, 其临时变量从本上下文已分配的编号之后开始编号, 因而不会与本上下文中的临时变量同名.
+     * 用于在不改动本上下文的情况下为其中的 IR 补充临时变量; 两个上下文中变量的 id 互不相关
+     *
+     * @return 新的上下文
+     */
+    public IRContext derive() {
+        final var derived = new IRContext();
+        derived.tempCount = tempCount;
+        return derived;
+    }
+
+    /**
+     * @param name 源语言中变量的名字
+     * @return 该名字对应的变量, 同一上下文中对同一名字总是返回同一个对象
+     */
+    public IRVariable named(String name) {
+        final var variable = namedVariables.get(name);
+        return variable != null ? variable : add(name);
+    }
+
+    /**
+     * @return 已分配的变量数, 所有变量的编号都小于它
+     */
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    /**
+     * @param id 变量的编号
+     * @return 该编号对应的变量
+     */
+    public IRVariable getVariable(int id) {
+        return variables.get(id);
+    }
+
+    /**
+     * @return 按编号排列的所有变量
+     */
+    public List<IRVariable> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * 将在另一个上下文中生成的 IR 搬到本上下文中: 临时变量按它们在原上下文中的分配顺序依次重新分配, 具名变量换成本上下文中的同名变量.
+     * 依次搬入各段独立生成的 IR 时, 临时变量的编号与在本上下文中一次性生成整段 IR 时相同
+     *
+     * @param source       生成这段 IR 的上下文
+     * @param instructions 这段 IR
+     * @return 只引用本上下文中的变量的 IR
+     */
+    public List<Instruction> adopt(IRContext source, List<Instruction> instructions) {
+        final var renamed = new IRVariable[source.getVariableCount()];
+        for (int id = 0; id < renamed.length; id++) {
+            final var variable = source.getVariable(id);
+            renamed[id] = variable.isTemp() ? temp() : named(variable.getName());
+        }
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            result.add(switch (instruction.getKind()) {
+                case ADD -> Instruction.createAdd(
+                    rename(instruction.getResult(), renamed), rename(instruction.getLHS(), renamed), rename(instruction.getRHS(), renamed));
+                case SUB -> Instruction.createSub(
+                    rename(instruction.getResult(), renamed), rename(instruction.getLHS(), renamed), rename(instruction.getRHS(), renamed));
+                case MUL -> Instruction.createMul(
+                    rename(instruction.getResult(), renamed), rename(instruction.getLHS(), renamed), rename(instruction.getRHS(), renamed));
+                case MOV -> Instruction.createMov(rename(instruction.getResult(), renamed), rename(instruction.getFrom(), renamed));
+                case RET -> Instruction.createRet(rename(instruction.getReturnValue(), renamed));
+            });
+        }
+        return result;
+    }
+
+    private static IRVariable rename(IRVariable variable, IRVariable[] renamed) {
+        return renamed[variable.getId()];
+    }
+
+    private static IRValue rename(IRValue value, IRVariable[] renamed) {
+        return value instanceof IRVariable variable ? rename(variable, renamed) : value;
+    }
+
+    /**
+     * @param name 变量的名字
+     * @return 具名变量, 或由 {@link #of(List)} 登记的临时变量; 不存在时为 null
+     */
+    IRVariable lookup(String name) {
+        return namedVariables.get(name);
+    }
+
+    /**
+     * 登记一个来自其他地方的变量, 供 {@link #of(List)} 使用
+     */
+    private void register(IRVariable variable) {
+        final var name = variable.getName();
+        if (namedVariables.containsKey(name)) {
+            return;
+        }
+
+        namedVariables.put(name, add(name));
+        if (variable.isTemp()) {
+            tempCount = Math.max(tempCount, Integer.parseInt(name.substring(1)) + 1);
+        }
+    }
+
+    private IRVariable add(String name) {
+        final var variable = new IRVariable(name, variables.size());
+        variables.add(variable);
+        if (variable.isNamed()) {
+            namedVariables.put(name, variable);
+        }
+        return variable;
+    }
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    // 具名变量的驻留表; 由 of 构造的上下文中还包括已有的临时变量
+    private final Map<String, IRVariable> namedVariables = new HashMap<>();
+    private int tempCount = 0;
+}
@@ -4,7 +4,14 @@ package cn.edu.hitsz.compiler.ir;
  * IR 中的立即数
  */
 public class IRImmediate implements IRValue {
+    /**
+     * @param value 立即数的值
+     * @return 对应的 IRImmediate, 常用的较小的值总是返回缓存的同一个对象
+     */
     public static IRImmediate of(int value) {
+        if (value >= CACHE_LOW && value < CACHE_LOW + CACHE.length) {
+            return CACHE[value - CACHE_LOW];
+        }
         return new IRImmediate(value);
     }
 
@@ -22,4 +29,13 @@ public class IRImmediate implements IRValue {
     private IRImmediate(int value) {
         this.value = value;
     }
+
+    private static final int CACHE_LOW = -128;
+    private static final IRImmediate[] CACHE = new IRImmediate[1024 + 128];
+
+    static {
+        for (int idx = 0; idx < CACHE.length; idx++) {
+            CACHE[idx] = new IRImmediate(CACHE_LOW + idx);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * IR 中的 "变量"
  * <br>
@@ -10,24 +12,35 @@ package cn.edu.hitsz.compiler.ir;
  */
 public class IRVariable implements IRValue {
     /**
+     * 构造不属于任何 {@link IRContext} 的具名变量. 同一编译过程中的变量应通过 {@link IRContext#named(String)} 获得
+     *
      * @param name 源语言中变量的名字
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
     public static IRVariable named(String name) {
-        return new IRVariable(name);
+        return new IRVariable(name, NO_ID);
     }
 
     /**
+     * 构造不属于任何 {@link IRContext} 的临时变量, 编号来自全局共享的计数器. 同一编译过程中的临时变量应通过 {@link IRContext#temp()} 获得
+     *
      * @return 一个对应于源语言中的临时变量的新 IRVariable
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        return new IRVariable("$" + count.getAndIncrement(), NO_ID);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return 该变量在所属 {@link IRContext} 中的编号, 从 0 开始连续分配; 不属于任何 IRContext 时为 -1
+     */
+    public int getId() {
+        return id;
+    }
+
     public boolean isTemp() {
         return name.startsWith("$");
     }
@@ -43,7 +56,8 @@ public class IRVariable implements IRValue {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        // 同一 IRContext 中的变量是驻留的, 绝大多数比较在第一个条件就能得出结果
+        return this == obj || obj instanceof IRVariable reg && name.equals(reg.name);
     }
 
     @Override
@@ -51,10 +65,14 @@ public class IRVariable implements IRValue {
         return name.hashCode();
     }
 
-    private IRVariable(String name) {
+    IRVariable(String name, int id) {
         this.name = name;
+        this.id = id;
     }
 
+    static final int NO_ID = -1;
+
     private final String name;
-    private static int count = 0;
+    private final int id;
+    private static final AtomicInteger count = new AtomicInteger();
 }
@@ -1,6 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -55,27 +56,27 @@ public class Instruction {
     }
 
     public IRVariable getResult() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV));
+        ensureKindMatch(WITH_RESULT);
         return result;
     }
 
     public IRValue getLHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY);
         return operands.get(0);
     }
 
     public IRValue getRHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY);
         return operands.get(1);
     }
 
     public IRValue getFrom() {
-        ensureKindMatch(Set.of(InstructionKind.MOV));
+        ensureKindMatch(MOV_ONLY);
         return operands.get(0);
     }
 
     public IRValue getReturnValue() {
-        ensureKindMatch(Set.of(InstructionKind.RET));
+        ensureKindMatch(RET_ONLY);
         return operands.get(0);
     }
 
@@ -103,6 +104,12 @@ public class Instruction {
     private final IRVariable result;
     private final List<IRValue> operands;
 
+    // 各 getter 允许的指令种类, 预先构造好, 避免每次访问参数都构造一个集合
+    private static final Set<InstructionKind> WITH_RESULT = EnumSet.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV);
+    private static final Set<InstructionKind> BINARY = EnumSet.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL);
+    private static final Set<InstructionKind> MOV_ONLY = EnumSet.of(InstructionKind.MOV);
+    private static final Set<InstructionKind> RET_ONLY = EnumSet.of(InstructionKind.RET);
+
     private void ensureKindMatch(Set<InstructionKind> targetKinds) {
         final var kind = getKind();
         if (!targetKinds.contains(kind)) {
@@ -0,0 +1,155 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 词法分析器读取源程序字符所用的缓冲区
+ * <br>
+ * 自动机每次只需要查看当前字符 (peek), 在确定该字符属于正在识别的词素后再消耗它 (advance), 因此缓冲区只需支持一个字符的向前看.
+ * 读到输入末尾时 peek 返回 {@link #EOF}, 相当于理论课中双缓冲区末尾的哨兵字符.
+ */
+interface CharSource extends Closeable {
+    /**
+     * 输入结束的哨兵
+     */
+    int EOF = -1;
+
+    /**
+     * @return 当前字符, 不消耗它; 若已到输入末尾则返回 {@link #EOF}
+     */
+    int peek();
+
+    /**
+     * 消耗当前字符
+     */
+    void advance();
+
+    @Override
+    void close();
+
+    /**
+     * @param text 已完整读入内存的源程序
+     * @return 基于该字符序列的缓冲区
+     */
+    static CharSource of(CharSequence text) {
+        return new StringSource(text);
+    }
+
+    /**
+     * 以固定大小的缓冲区流式读取源文件, 内存占用与文件大小无关
+     *
+     * @param path 源文件路径
+     * @return 基于该文件的缓冲区
+     */
+    static CharSource open(String path) {
+        try {
+            return new ChannelSource(FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 完整读入模式下的缓冲区
+     */
+    final class StringSource implements CharSource {
+        private final CharSequence text;
+        private int position = 0;
+
+        private StringSource(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int peek() {
+            return position < text.length() ? text.charAt(position) : EOF;
+        }
+
+        @Override
+        public void advance() {
+            position++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 流式模式下的缓冲区
+     * <br>
+     * 每次从 FileChannel 读入一块固定大小的数据, 当前块被消耗完之后再读入下一块. 源语言只包含 ASCII 字符, 因此直接按字节解码.
+     */
+    final class ChannelSource implements CharSource {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private boolean reachEnd = false;
+
+        private ChannelSource(FileChannel channel) {
+            this.channel = channel;
+            // 初始时缓冲区为空, 第一次 peek 时再读入
+            buffer.limit(0);
+        }
+
+        @Override
+        public int peek() {
+            if (!buffer.hasRemaining() && !fill()) {
+                return EOF;
+            }
+
+            final var character = buffer.get(buffer.position());
+            if (character < 0) {
+                throw new LexicalAnalyzer.LexicalAnalyzeException("源程序中含有非 ASCII 字符");
+            }
+            return character;
+        }
+
+        @Override
+        public void advance() {
+            if (buffer.hasRemaining()) {
+                buffer.position(buffer.position() + 1);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on closing source", e);
+            }
+        }
+
+        /**
+         * 读入下一块数据
+         *
+         * @return 是否读到了新数据
+         */
+        private boolean fill() {
+            if (reachEnd) {
+                return false;
+            }
+
+            try {
+                buffer.clear();
+                int read;
+                do {
+                    read = channel.read(buffer);
+                } while (read == 0);
+                buffer.flip();
+
+                reachEnd = read < 0;
+                return buffer.hasRemaining();
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on reading source", e);
+            }
+        }
+    }
+}
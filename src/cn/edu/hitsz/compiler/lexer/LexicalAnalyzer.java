@@ -7,9 +7,12 @@ import cn.edu.hitsz.compiler.utils.FileUtils;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.stream.StreamSupport;
 
@@ -28,11 +31,26 @@ public class LexicalAnalyzer {
 
     List<Token> tokens;
 
+    // 流式模式下的源文件路径, 为 null 时表示使用完整读入的 codeWords
+    private String streamingPath;
+
+    // 表驱动的自动机, 仅在使用 Engine.Table 时构造
+    private final TableDrivenScanner tableScanner;
+
     public LexicalAnalyzer(SymbolTable symbolTable) {
+        this(symbolTable, Engine.Switch);
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param engine      所使用的自动机实现, 两种实现的结果完全相同, 可以用来相互对照性能
+     */
+    public LexicalAnalyzer(SymbolTable symbolTable, Engine engine) {
         this.symbolTable = symbolTable;
         this.codeWords = new StringBuilder();
         this.keyWords = Arrays.asList("int", "return");
         this.tokens = new ArrayList<>();
+        this.tableScanner = engine == Engine.Table ? new TableDrivenScanner(keyWords) : null;
     }
 
 
@@ -48,107 +66,171 @@ public class LexicalAnalyzer {
         try (BufferedReader inputCode = new BufferedReader(new FileReader(path))) {
             String codeLine;
             while (Objects.nonNull(codeLine = inputCode.readLine())) {
-                codeWords.append(codeLine);
+                // 保留换行符, 使完整读入与流式读取看到的字符相同
+                codeWords.append(codeLine).append('\n');
             }
-            codeWords.append('$');
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 直接加载一段源代码文本, 其中的换行符视作空白. 供增量编译时只对改动的语句做词法分析
+     *
+     * @param code 源代码
+     */
+    public void loadSource(CharSequence code) {
+        codeWords.append(code);
+    }
+
+    /**
+     * 以流式模式加载文件: 不再将文件完整读入内存, 而是在遍历 {@code getTokens()} 时才通过固定大小的缓冲区按需读取并分析,
+     * 内存占用与源文件大小无关
+     * <br>
+     * 流式模式下 {@code run()} 不做任何事情, 符号表条目也是在迭代到对应的标识符时才加入的.
+     * 每次遍历 {@code getTokens()} 都会重新分析一遍文件, 因此可以先 {@code dumpTokens} 再交给语法分析器.
+     *
+     * @param path 路径
+     */
+    public void loadFileStreaming(String path) {
+        this.streamingPath = path;
+    }
+
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
         // TODO: 自动机实现的词法分析过程
+        if (streamingPath != null) {
+            // 流式模式下由 getTokens 返回的迭代器按需分析
+            return;
+        }
+
+        try (final var source = CharSource.of(codeWords)) {
+            final var readChars = new StringBuilder();
+            Token token;
+            do {
+                token = nextToken(source, readChars);
+                tokens.add(token);
+            } while (token.getKind() != TokenKind.eof());
+        }
+    }
+
+    /**
+     * 从缓冲区中识别出下一个词法单元, 并为识别出的标识符维护符号表
+     *
+     * @param source    缓冲区
+     * @param readChars 用于暂存词素的 StringBuilder, 由调用者提供以便复用
+     * @return 下一个词法单元, 输入结束时为 EOF
+     */
+    private Token nextToken(CharSource source, StringBuilder readChars) {
+        final var token = tableScanner != null ? tableScanner.scan(source) : scan(source, readChars);
+        if ("id".equals(token.getKindId())) {
+            symbolTable.getOrAdd(token.getText());
+        }
+        return token;
+    }
+
+    /**
+     * 自动机: 从初始状态出发逐个查看字符, 直到当前字符不能再被当前状态接受时停机, 输出停机前识别出的词法单元.
+     * 导致停机的字符不会被消耗, 它将作为下一个词法单元的开头.
+     */
+    private Token scan(CharSource source, StringBuilder readChars) {
         var curState = State.Initial;
-        var readChars = new StringBuilder();
-
-        for (int idx = 0; idx < codeWords.length(); idx++) {
-            var character = codeWords.charAt(idx);
-            var halt = false;
-
-            curState = switch (curState) {
-                case Initial -> switch (character) {
-                    case '*' -> State.Star;
-                    case '=' -> State.Equal;
-                    case '(' -> State.LeftBracket;
-                    case ')' -> State.RightBracket;
-                    case '+' -> State.Plus;
-                    case '-' -> State.Minus;
-                    case '/' -> State.Division;
-                    case ';' -> State.Semicolon;
-                    case ',' -> State.Comma;
-                    default -> {
-                        if (Character.isLetter(character)) yield State.ID;
-                        else if (Character.isDigit(character) && (character != '0')) yield State.IntConst;
-                        else if (isBlank(character)) yield curState;
-                        else throw new LexicalAnalyzeException("不合法的符号");
+        readChars.setLength(0);
+
+        while (true) {
+            final var character = source.peek();
+
+            switch (curState) {
+                case Initial -> {
+                    if (character == CharSource.EOF) {
+                        return Token.eof();
                     }
-                };
+
+                    curState = switch (character) {
+                        case '*' -> State.Star;
+                        case '=' -> State.Equal;
+                        case '(' -> State.LeftBracket;
+                        case ')' -> State.RightBracket;
+                        case '+' -> State.Plus;
+                        case '-' -> State.Minus;
+                        case '/' -> State.Division;
+                        case ';' -> State.Semicolon;
+                        case ',' -> State.Comma;
+                        default -> {
+                            if (isLetter(character)) yield State.ID;
+                            else if (isDigit(character)) yield State.IntConst;
+                            else if (isBlank(character)) yield curState;
+                            else throw new LexicalAnalyzeException("不合法的符号");
+                        }
+                    };
+                }
                 case ID -> {
-                    if (Character.isLetter(character) || Character.isDigit(character)) yield curState;
-                    else {
-                        var identifierText = readChars.toString().strip();
+                    if (!isLetter(character) && !isDigit(character)) {
+                        var identifierText = readChars.toString();
                         if (keyWords.contains(identifierText)) {
-                            tokens.add(Token.simple(identifierText));
+                            return Token.simple(identifierText);
                         } else {
-                            tokens.add(Token.normal("id", identifierText));
-                            if (!symbolTable.has(identifierText)) {
-                                symbolTable.add(identifierText);
-                            }
+                            return Token.normal("id", identifierText);
                         }
-                        halt = true;
-                        yield State.Initial;
                     }
                 }
                 case IntConst -> {
-                    if (Character.isDigit(character)) yield curState;
-                    else {
-                        tokens.add(Token.normal("IntConst", readChars.toString().strip()));
-                        halt = true;
-                        yield State.Initial;
+                    if (!isDigit(character)) {
+                        return Token.normal("IntConst", readChars.toString());
                     }
                 }
                 case Star, Equal, LeftBracket
                         , RightBracket, Plus
                         , Minus, Division
                         , Semicolon, Comma -> {
-                    var symbol = readChars.toString().strip();
-                    if (";".equals(symbol)) tokens.add(Token.simple("Semicolon"));
-                    else tokens.add(Token.simple(symbol));
-                    halt = true;
-                    yield State.Initial;
+                    var symbol = readChars.toString();
+                    if (";".equals(symbol)) return Token.simple("Semicolon");
+                    else return Token.simple(symbol);
                 }
-            };
-            if (halt) {
-                readChars.delete(0, readChars.length());
-                if (character == '$') tokens.add(Token.eof());
-                else idx--;
-            } else {
-                readChars.append(character);
             }
+
+            // 能走到这里说明当前字符被接受, 消耗它; 初始状态下跳过的空白不属于任何词素
+            if (curState != State.Initial) {
+                readChars.append((char) character);
+            }
+            source.advance();
         }
+    }
 
+    /**
+     * 源语言只包含 ASCII 字符, 这里只接受 ASCII 字母, 与 {@link TableDrivenScanner} 保持一致
+     */
+    private static boolean isLetter(int character) {
+        return (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z');
+    }
 
+    private static boolean isDigit(int character) {
+        return character >= '0' && character <= '9';
     }
 
-    private boolean isBlank(char character) {
-        // \n已经在读取文件时忽略掉（暂不处理\n与\r\n的差异问题）
-        return Arrays.asList(' ', '\t', '\r').contains(character);
+    private boolean isBlank(int character) {
+        // 完整读入与流式读取都会遇到 \n (暂不处理\n与\r\n的差异问题)
+        return character == ' ' || character == '\t' || character == '\r' || character == '\n';
     }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
      *
-     * @return Token 列表
+     * @return Token 列表; 流式模式下为一个按需分析的 Iterable, 每次遍历都会重新读取文件.
+     * 此时得到的迭代器实现了 {@link AutoCloseable}, 没有遍历到 EOF 就放弃时应关闭它
      */
     public Iterable<Token> getTokens() {
         // TODO: 从词法分析过程中获取 Token 列表
         // 词法分析过程可以使用 Stream 或 Iterator 实现按需分析
         // 亦可以直接分析完整个文件
         // 总之实现过程能转化为一列表即可
+        if (streamingPath != null) {
+            final var path = streamingPath;
+            return () -> new StreamingTokenIterator(CharSource.open(path));
+        }
         return tokens;
     }
 
@@ -159,6 +241,77 @@ public class LexicalAnalyzer {
         );
     }
 
+    /**
+     * 兜底关闭被丢弃的流式迭代器的缓冲区
+     */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /**
+     * 流式模式下按需分析的 Token 迭代器
+     * <br>
+     * 输出 EOF 或分析出错时关闭缓冲区. 中途放弃遍历的使用者应调用 {@link #close()};
+     * 没有关闭就被回收的迭代器由 {@link #cleaner} 关闭缓冲区, 不会一直占用文件.
+     */
+    private class StreamingTokenIterator implements Iterator<Token>, AutoCloseable {
+        private final CharSource source;
+        private final Cleaner.Cleanable cleanable;
+        private final StringBuilder readChars = new StringBuilder();
+        private boolean finished = false;
+
+        StreamingTokenIterator(CharSource source) {
+            this.source = source;
+            // 清理动作只能引用缓冲区本身, 不能引用迭代器, 否则迭代器永远不会被回收
+            this.cleanable = cleaner.register(this, source::close);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !finished;
+        }
+
+        @Override
+        public Token next() {
+            if (finished) {
+                throw new NoSuchElementException();
+            }
+
+            final Token token;
+            try {
+                token = nextToken(source, readChars);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (token.getKind() == TokenKind.eof()) {
+                close();
+            }
+            return token;
+        }
+
+        /**
+         * 关闭缓冲区, 之后不再输出 token. 可以重复调用
+         */
+        @Override
+        public void close() {
+            finished = true;
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * 词法分析所用的自动机实现
+     */
+    public enum Engine {
+        /**
+         * 逐字符 switch 状态的自动机, 见 {@code scan}
+         */
+        Switch,
+        /**
+         * 预先编译出字符类表与转移表的自动机, 见 {@link TableDrivenScanner}
+         */
+        Table
+    }
+
     /**
      * 自动机的状态
      */
@@ -0,0 +1,174 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表驱动的词法自动机
+ * <br>
+ * 与 {@link LexicalAnalyzer} 中逐字符 switch 的实现识别相同的语言, 但事先把自动机编译成两张表:
+ * <ul>
+ *     <li>字符类表: 按 ASCII 码索引, 把字符映射到字符类 (字母, 数字, 空白, 各个标点...)</li>
+ *     <li>转移表: 按 {@code 状态 * 字符类数 + 字符类} 索引的一维 int 数组</li>
+ * </ul>
+ * 每个状态停机时输出什么词法单元则由接受动作表决定. 这样内层循环只有两次数组访问, 不分配对象也没有多路分支.
+ * <br>
+ * 该自动机只接受 ASCII 字符, 源语言本身也只包含 ASCII 字符.
+ */
+class TableDrivenScanner {
+    //============================== 字符类 ==============================
+    private static final int CLASS_OTHER = 0;
+    private static final int CLASS_BLANK = 1;
+    private static final int CLASS_LETTER = 2;
+    private static final int CLASS_DIGIT = 3;
+    // 其后每个单字符标点各占一个字符类
+    private static final String PUNCTUATIONS = "*=()+-/;,";
+    private static final int CLASS_FIRST_PUNCTUATION = 4;
+    private static final int CLASS_COUNT = CLASS_FIRST_PUNCTUATION + PUNCTUATIONS.length();
+
+    //============================== 状态 ==============================
+    private static final int STATE_INITIAL = 0;
+    private static final int STATE_ID = 1;
+    private static final int STATE_INT_CONST = 2;
+    // 其后每个单字符标点各占一个状态
+    private static final int STATE_FIRST_PUNCTUATION = 3;
+    private static final int STATE_COUNT = STATE_FIRST_PUNCTUATION + PUNCTUATIONS.length();
+
+    // 转移表中的特殊目标: 停机 (当前字符不属于该词素) 与出错
+    private static final int HALT = -1;
+    private static final int ERROR = -2;
+
+    //============================== 接受动作 ==============================
+    private static final int ACCEPT_EOF = 0;
+    private static final int ACCEPT_ID_OR_KEYWORD = 1;
+    private static final int ACCEPT_INT_CONST = 2;
+    private static final int ACCEPT_SIMPLE = 3;
+
+    private static final byte[] charClasses = new byte[128];
+    private static final int[] transitions = new int[STATE_COUNT * CLASS_COUNT];
+    private static final int[] acceptActions = new int[STATE_COUNT];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            charClasses[c] = CLASS_LETTER;
+            charClasses[Character.toUpperCase(c)] = CLASS_LETTER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            charClasses[c] = CLASS_DIGIT;
+        }
+        for (final var c : List.of(' ', '\t', '\r', '\n')) {
+            charClasses[c] = CLASS_BLANK;
+        }
+        for (int i = 0; i < PUNCTUATIONS.length(); i++) {
+            charClasses[PUNCTUATIONS.charAt(i)] = (byte) (CLASS_FIRST_PUNCTUATION + i);
+        }
+
+        // 默认所有转移都是停机, 再填入各状态能接受的字符类
+        Arrays.fill(transitions, HALT);
+
+        // 初始状态: 跳过空白, 遇到不认识的字符即出错
+        setTransition(STATE_INITIAL, CLASS_OTHER, ERROR);
+        setTransition(STATE_INITIAL, CLASS_BLANK, STATE_INITIAL);
+        setTransition(STATE_INITIAL, CLASS_LETTER, STATE_ID);
+        setTransition(STATE_INITIAL, CLASS_DIGIT, STATE_INT_CONST);
+        for (int i = 0; i < PUNCTUATIONS.length(); i++) {
+            setTransition(STATE_INITIAL, CLASS_FIRST_PUNCTUATION + i, STATE_FIRST_PUNCTUATION + i);
+        }
+
+        setTransition(STATE_ID, CLASS_LETTER, STATE_ID);
+        setTransition(STATE_ID, CLASS_DIGIT, STATE_ID);
+
+        setTransition(STATE_INT_CONST, CLASS_DIGIT, STATE_INT_CONST);
+
+        // 标点状态读入一个字符后就完成了识别, 对任何字符都停机
+
+        acceptActions[STATE_INITIAL] = ACCEPT_EOF;
+        acceptActions[STATE_ID] = ACCEPT_ID_OR_KEYWORD;
+        acceptActions[STATE_INT_CONST] = ACCEPT_INT_CONST;
+        Arrays.fill(acceptActions, STATE_FIRST_PUNCTUATION, STATE_COUNT, ACCEPT_SIMPLE);
+    }
+
+    private static void setTransition(int state, int charClass, int target) {
+        transitions[state * CLASS_COUNT + charClass] = target;
+    }
+
+    /**
+     * 构造扫描器. 由于需要事先构造出各种 TokenKind, 需在码点文件读入之后调用.
+     *
+     * @param keyWords 关键字列表
+     */
+    TableDrivenScanner(List<String> keyWords) {
+        this.idKind = TokenKind.fromString("id");
+        this.intConstKind = TokenKind.fromString("IntConst");
+
+        this.keyWords = new HashMap<>();
+        for (final var keyWord : keyWords) {
+            this.keyWords.put(keyWord, Token.simple(keyWord));
+        }
+
+        // Token 是不可变的, 标点对应的 Token 可以直接复用
+        this.simpleTokens = new Token[STATE_COUNT];
+        for (int i = 0; i < PUNCTUATIONS.length(); i++) {
+            final var symbol = PUNCTUATIONS.substring(i, i + 1);
+            simpleTokens[STATE_FIRST_PUNCTUATION + i] = Token.simple(";".equals(symbol) ? "Semicolon" : symbol);
+        }
+    }
+
+    /**
+     * 从缓冲区中识别出下一个词法单元. 导致停机的字符不会被消耗.
+     *
+     * @param source 缓冲区
+     * @return 识别出的词法单元, 输入结束时为 EOF
+     */
+    Token scan(CharSource source) {
+        var state = STATE_INITIAL;
+        var length = 0;
+
+        while (true) {
+            final var character = source.peek();
+            final int next;
+            if (character == CharSource.EOF) {
+                next = HALT;
+            } else {
+                final var charClass = character < charClasses.length ? charClasses[character] : CLASS_OTHER;
+                next = transitions[state * CLASS_COUNT + charClass];
+            }
+
+            if (next == HALT) {
+                break;
+            } else if (next == ERROR) {
+                throw new LexicalAnalyzer.LexicalAnalyzeException("不合法的符号");
+            }
+
+            // 初始状态下跳过的空白不属于任何词素
+            if (next != STATE_INITIAL) {
+                if (length == lexeme.length) {
+                    lexeme = Arrays.copyOf(lexeme, length * 2);
+                }
+                lexeme[length++] = (char) character;
+            }
+            state = next;
+            source.advance();
+        }
+
+        return switch (acceptActions[state]) {
+            case ACCEPT_EOF -> Token.eof();
+            case ACCEPT_ID_OR_KEYWORD -> {
+                final var text = new String(lexeme, 0, length);
+                final var keyWord = keyWords.get(text);
+                yield keyWord != null ? keyWord : Token.normal(idKind, text);
+            }
+            case ACCEPT_INT_CONST -> Token.normal(intConstKind, new String(lexeme, 0, length));
+            case ACCEPT_SIMPLE -> simpleTokens[state];
+            default -> throw new LexicalAnalyzer.LexicalAnalyzeException("未知的接受动作");
+        };
+    }
+
+    private final TokenKind idKind;
+    private final TokenKind intConstKind;
+    private final Map<String, Token> keyWords;
+    private final Token[] simpleTokens;
+    private char[] lexeme = new char[64];
+}
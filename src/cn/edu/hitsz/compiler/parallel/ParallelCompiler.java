@@ -0,0 +1,253 @@
+package cn.edu.hitsz.compiler.parallel;
+
+import cn.edu.hitsz.compiler.ir.IRContext;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.RecordingProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.PhaseTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行的语法分析, 语义分析与 IR 生成
+ * <br>
+ * 文法中的程序是以 Semicolon 结尾的语句序列 (S_list -> S Semicolon S_list | S Semicolon), 各条语句之间只通过符号表中的类型相互影响.
+ * 因此此类在 Semicolon 处把词法单元流切成若干段, 每段都是一个合法的程序 (或者与整个程序在同一处出错), 交给各线程分别用自己的
+ * {@link SyntaxAnalyzer} 与观察者分析, 最后在当前线程中按顺序合并:
+ * <ul>
+ *     <li>S_list 是右递归的, 每段的规约序列都是其各条语句的规约序列之后接上 S_list -> S Semicolon 一次,
+ *     S_list -> S Semicolon S_list (语句数 - 1) 次与 P -> S_list. 去掉这些结尾后拼接, 再按总语句数补上即可</li>
+ *     <li>每段在只含本段标识符的符号表上做语义分析, 合并时再把声明的类型依次写入真正的符号表, 重复声明在此时报错</li>
+ *     <li>每段的 IR 在各自的 {@link IRContext} 中生成, 合并时依次搬入整个程序的上下文, 临时变量的编号因此与顺序生成时相同</li>
+ * </ul>
+ * 合并时按段的顺序抛出第一个错误, 因此无论结果还是出错时抛出的异常都与在单个线程中顺序分析整个程序时相同.
+ */
+public class ParallelCompiler {
+    /**
+     * @param symbolTable 词法分析得到的符号表, 合并时在其中填入类型
+     * @param parallelism 使用的线程数, 为 1 时在当前线程中逐段分析
+     */
+    public ParallelCompiler(SymbolTable symbolTable, int parallelism) {
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism of compiler must be positive");
+        }
+
+        this.symbolTable = symbolTable;
+        this.parallelism = parallelism;
+        this.beginProduction = GrammarInfo.getBeginProduction();
+        final var productions = GrammarInfo.getProductionsInOrder();
+        // 产生式的 index 即其在 grammar.txt 中的行号
+        this.lastStatementProduction = productions.get(2); // S_list -> S Semicolon
+        this.moreStatementsProduction = productions.get(1); // S_list -> S Semicolon S_list
+    }
+
+    public void loadTokens(Iterable<Token> tokens) {
+        this.tokens = new ArrayList<>();
+        tokens.forEach(this.tokens::add);
+    }
+
+    public void loadLRTable(LRTable table) {
+        // 紧凑形式在第一次使用时才构造, 先在当前线程中构造好, 免得各线程都在 CompiledLRTable.of 上等待
+        CompiledLRTable.of(table);
+        this.lrTable = table;
+    }
+
+    public void run() {
+        final var chunks = split();
+        if (parallelism == 1) {
+            chunks.forEach(Chunk::compile);
+        } else {
+            final var caller = Thread.currentThread();
+            final var pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invokeAll(chunks.stream().map(chunk -> (Callable<Chunk>) () -> {
+                    final var cpuStart = PhaseTimer.currentThreadCpuNanos();
+                    final var allocatedStart = PhaseTimer.currentThreadAllocatedBytes();
+                    chunk.compile();
+                    // 调用线程也可能亲自执行某些段, 它的开销已由调用者自己记录
+                    if (Thread.currentThread() != caller) {
+                        workerCpuNanos.addAndGet(cpuStart >= 0 ? PhaseTimer.currentThreadCpuNanos() - cpuStart : 0);
+                        workerAllocatedBytes.addAndGet(allocatedStart >= 0 ? PhaseTimer.currentThreadAllocatedBytes() - allocatedStart : 0);
+                    }
+                    return chunk;
+                }).toList());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        merge(chunks);
+    }
+
+    /**
+     * @return 按规约顺序排列的所有规约到的产生式
+     */
+    public List<Production> getReducedProductions() {
+        return reducedProductions;
+    }
+
+    public List<Instruction> getIR() {
+        return instructions;
+    }
+
+    /**
+     * @return 调用 {@link #run()} 的线程以外的工作线程的 CPU 时间之和, JVM 不支持时为 -1
+     */
+    public long getWorkerCpuNanos() {
+        return PhaseTimer.currentThreadCpuNanos() >= 0 ? workerCpuNanos.get() : -1;
+    }
+
+    /**
+     * @return 调用 {@link #run()} 的线程以外的工作线程分配的字节数之和, JVM 不支持时为 -1
+     */
+    public long getWorkerAllocatedBytes() {
+        return PhaseTimer.currentThreadAllocatedBytes() >= 0 ? workerAllocatedBytes.get() : -1;
+    }
+
+    /**
+     * @return {@link #getIR()} 中的变量所属的上下文
+     */
+    public IRContext getContext() {
+        return context;
+    }
+
+    public void dumpReducedProductions(String path) {
+        FileUtils.writeLines(path, reducedProductions.stream().map(Production::toString).toList());
+    }
+
+    public void dumpIR(String path) {
+        FileUtils.writeLines(path, instructions.stream().map(Instruction::toString).toList());
+    }
+
+    /**
+     * 在 Semicolon 之后切分, 每段约含 1 / (4 * 线程数) 的词法单元, 使各线程的负载较为均衡.
+     * 最后一个 Semicolon 之后剩余的词法单元 (合法的程序中只有 EOF) 归入最后一段, 因此每段都不为空
+     */
+    private List<Chunk> split() {
+        final var end = !tokens.isEmpty() && tokens.get(tokens.size() - 1).getKind() == TokenKind.eof() ? tokens.size() - 1 : tokens.size();
+        final var target = Math.max(1, end / (parallelism * 4));
+
+        final var chunks = new ArrayList<Chunk>();
+        var from = 0;
+        for (int idx = 0; idx < end; idx++) {
+            if (idx + 1 - from >= target && "Semicolon".equals(tokens.get(idx).getKindId()) && idx + 1 < end) {
+                chunks.add(new Chunk(tokens.subList(from, idx + 1)));
+                from = idx + 1;
+            }
+        }
+        chunks.add(new Chunk(tokens.subList(from, end)));
+        return chunks;
+    }
+
+    /**
+     * 按顺序合并各段的结果, 遇到第一个出错的段时抛出它的异常
+     */
+    private void merge(List<Chunk> chunks) {
+        reducedProductions = new ArrayList<>();
+        instructions = new ArrayList<>();
+        var statements = 0;
+
+        for (final var chunk : chunks) {
+            // 出错之前做出的声明仍然有效, 它们与之前各段的声明重复时, 顺序分析也会先报告重复声明
+            for (final var identifier : chunk.identifiers) {
+                final var type = chunk.symbolTable.get(identifier).getType();
+                if (type != null) {
+                    symbolTable.get(identifier).setType(type);
+                }
+            }
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+
+            final var reductions = chunk.productionCollector.getReducedProductions();
+            reducedProductions.addAll(reductions.subList(0, reductions.size() - chunk.statements - 1));
+            statements += chunk.statements;
+
+            instructions.addAll(context.adopt(chunk.irGenerator.getContext(), chunk.irGenerator.getIR()));
+        }
+
+        reducedProductions.add(lastStatementProduction);
+        for (int idx = 1; idx < statements; idx++) {
+            reducedProductions.add(moreStatementsProduction);
+        }
+        reducedProductions.add(beginProduction);
+    }
+
+    /**
+     * 切分出的一段词法单元, 及其在某个线程中的分析结果
+     */
+    private final class Chunk {
+        private Chunk(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * 将本段作为一个完整的程序分析, 出错时记下异常而不抛出
+         */
+        private void compile() {
+            for (final var token : tokens) {
+                if ("id".equals(token.getKindId()) && !symbolTable.has(token.getText())) {
+                    symbolTable.add(token.getText());
+                    identifiers.add(token.getText());
+                }
+                if ("Semicolon".equals(token.getKindId())) {
+                    statements++;
+                }
+            }
+
+            final var withEof = new ArrayList<Token>(tokens.size() + 1);
+            withEof.addAll(tokens);
+            withEof.add(Token.eof());
+
+            final var parser = new SyntaxAnalyzer(symbolTable, SyntaxAnalyzer.Mode.ChainElimination);
+            parser.loadTokens(withEof);
+            parser.loadLRTable(lrTable);
+            parser.registerObserver(productionCollector);
+            parser.registerObserver(new SemanticAnalyzer());
+            parser.registerObserver(irGenerator);
+            try {
+                parser.run();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        private final List<Token> tokens;
+        // 只含本段标识符的符号表, 以及这些标识符按首次出现的顺序
+        private final SymbolTable symbolTable = new SymbolTable();
+        private final List<String> identifiers = new ArrayList<>();
+        private int statements = 0;
+
+        private final RecordingProductionCollector productionCollector = new RecordingProductionCollector(beginProduction);
+        private final IRGenerator irGenerator = new IRGenerator(new IRContext());
+        private RuntimeException error = null;
+    }
+
+    private final SymbolTable symbolTable;
+    private final int parallelism;
+    private final Production beginProduction;
+    private final Production lastStatementProduction;
+    private final Production moreStatementsProduction;
+
+    private List<Token> tokens;
+    private LRTable lrTable;
+
+    private final IRContext context = new IRContext();
+    private final AtomicLong workerCpuNanos = new AtomicLong();
+    private final AtomicLong workerAllocatedBytes = new AtomicLong();
+    private List<Production> reducedProductions;
+    private List<Instruction> instructions;
+}
@@ -0,0 +1,129 @@
+package cn.edu.hitsz.compiler.parser;
+
+import java.util.Arrays;
+
+/**
+ * 由语法分析驱动程序维护, 供各观察者共享的综合属性栈
+ * <br>
+ * 与分析栈一样, 每个文法符号对应栈中的一层: 移入时压入一层, 规约时弹出产生式体的各层, 再压入产生式头的一层.
+ * 每个观察者通过 {@link #newColumn()} 申请属于自己的一列, 只读写自己的那一列; 所有列共用同一个栈顶下标,
+ * 因此无论注册了多少观察者, 每个文法符号都只有一次压栈与一次弹栈.
+ * <br>
+ * 不关心的符号对应的位置为 null, 不必为其分配占位对象. 规约时若观察者没有调用 {@link Column#setResult(Object)},
+ * 产生式头的属性默认沿用产生式体第一个符号的属性 (即 yacc 中的 $$ = $1), 于是 E -> A 这样直接传递属性的产生式不需要任何动作,
+ * 观察者可以通过 {@link ExtendedActionObserver#isInterestedIn} 声明不关心它们.
+ * <pre>
+ * // 在 setAttributeStack 中申请一列
+ * values = stack.newColumn();
+ * // 在 whenShift 中设置刚移入的词法单元的属性
+ * values.set(0, IRImmediate.of(42));
+ * // 在 whenReduce 中读取产生式体的属性并设置产生式头的属性, 例如 E -> E + A
+ * values.setResult(add(values.get(2), values.get(0)));
+ * </pre>
+ */
+public class AttributeStack {
+    /**
+     * 申请新的一列, 应在开始分析之前调用
+     *
+     * @param <T> 该列存放的属性的类型
+     * @return 新的一列
+     */
+    public <T> Column<T> newColumn() {
+        final var column = new Column<T>(capacity);
+        columns = Arrays.copyOf(columns, columns.length + 1);
+        columns[columns.length - 1] = column;
+        return column;
+    }
+
+    /**
+     * 属性栈中的一列
+     *
+     * @param <T> 该列存放的属性的类型
+     */
+    public final class Column<T> {
+        /**
+         * 在 whenShift 中调用时, 深度 0 为刚移入的词法单元; 在 whenReduce 中调用时, 深度 0 为产生式体的最后一个符号,
+         * 深度 n - 1 为产生式体 (长度为 n) 的第一个符号
+         *
+         * @param depth 与栈顶的距离
+         * @return 该位置的属性, 未设置过时为 null
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int depth) {
+            return (T) values[top - depth];
+        }
+
+        /**
+         * @param depth 与栈顶的距离, 含义同 {@link #get(int)}
+         * @param value 该位置的属性
+         */
+        public void set(int depth, T value) {
+            values[top - depth] = value;
+        }
+
+        /**
+         * 在 whenReduce 中设置产生式头的属性, 规约完成后它将位于栈顶
+         *
+         * @param value 产生式头的属性
+         */
+        public void setResult(T value) {
+            result = value;
+            hasResult = true;
+        }
+
+        private Column(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        private Object[] values;
+        private Object result = null;
+        private boolean hasResult = false;
+    }
+
+    /**
+     * 移入时压入一层, 各列均为 null
+     */
+    void push() {
+        if (++top == capacity) {
+            grow();
+        }
+        for (final var column : columns) {
+            column.values[top] = null;
+        }
+    }
+
+    /**
+     * 规约时弹出产生式体的各层, 再压入产生式头的一层
+     *
+     * @param length 产生式体的长度
+     */
+    void reduce(int length) {
+        final var head = top - length + 1;
+        if (head == capacity) {
+            grow();
+        }
+        for (final var column : columns) {
+            final var values = column.values;
+            if (column.hasResult) {
+                values[head] = column.result;
+                column.result = null;
+                column.hasResult = false;
+            } else if (length == 0) {
+                values[head] = null;
+            }
+            // 否则沿用产生式体第一个符号的属性, 它恰好就在 head 处
+        }
+        top = head;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        for (final var column : columns) {
+            column.values = Arrays.copyOf(column.values, capacity);
+        }
+    }
+
+    private Column<?>[] columns = new Column<?>[0];
+    private int capacity = 64;
+    private int top = -1;
+}
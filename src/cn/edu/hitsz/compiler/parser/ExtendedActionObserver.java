@@ -0,0 +1,48 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+/**
+ * 在 {@link ActionObserver} 之外, 观察者可以选择实现的附加接口
+ * <br>
+ * {@link ActionObserver} 与 {@link ProductionCollector} 是实验框架的一部分, 不应修改. 驱动程序的优化需要观察者提供的额外信息
+ * (关心哪些产生式与词法单元, 是否使用共享属性栈) 因此单独放在这里: 只实现 {@link ActionObserver} 的观察者视为关心所有动作,
+ * 不使用共享属性栈, 行为与原来相同.
+ *
+ * @see SyntaxAnalyzer#registerObserver(ActionObserver)
+ */
+public interface ExtendedActionObserver extends ActionObserver {
+    /**
+     * 声明观察者是否关心某个产生式的规约.
+     * <br>
+     * 驱动程序在注册观察者时按产生式预先分好组, 每次规约只通知返回 true 的观察者.
+     * 只有当 whenReduce 对该产生式没有任何效果 (包括不改变观察者自己维护的栈) 时才应返回 false,
+     * 例如 E -> A 这类直接沿用右部属性的产生式. 默认返回 true, 即观察者总能看到完整的规约序列.
+     *
+     * @param production 产生式
+     * @return 是否需要在规约该产生式时被通知
+     */
+    default boolean isInterestedIn(Production production) {
+        return true;
+    }
+
+    /**
+     * 声明观察者是否关心某类词法单元的移入, 用法与 {@link #isInterestedIn(Production)} 相同
+     *
+     * @param tokenKind 词法单元的类型
+     * @return 是否需要在移入该类词法单元时被通知
+     */
+    default boolean isInterestedIn(TokenKind tokenKind) {
+        return true;
+    }
+
+    /**
+     * 注册观察者时驱动程序会调用此函数, 传入其维护的共享属性栈. 需要综合属性的观察者可以在此申请一列,
+     * 而不必自己维护一个与分析栈平行的栈, 见 {@link AttributeStack}
+     *
+     * @param stack 共享属性栈
+     */
+    default void setAttributeStack(AttributeStack stack) {
+    }
+}
@@ -1,20 +1,21 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRContext;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
-import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 
 // TODO: 实验三: 实现 IR 生成
@@ -22,7 +23,7 @@ import java.util.List;
 /**
  *
  */
-public class IRGenerator implements ActionObserver {
+public class IRGenerator implements ExtendedActionObserver {
 
     /**
      * 符号表
@@ -30,128 +31,123 @@ public class IRGenerator implements ActionObserver {
     SymbolTable table;
 
     /**
-     * 综合属性栈，只负责记录IR值信息
+     * 共享属性栈中属于 IR 生成的一列, 只负责记录IR值信息
      */
-    Deque<IRValue> synStk = new ArrayDeque<>();
+    AttributeStack.Column<IRValue> values;
 
     /**
-     * 三地址码列表
+     * 三地址码, 以平行数组的形式存放
      */
-    List<Instruction> instructions = new ArrayList<>();
+    IRBuffer buffer;
+
+    /**
+     * getIR 构造的指令列表, 生成新的指令后失效
+     */
+    private List<Instruction> instructions = null;
+
+    /**
+     * 分配 IR 变量的上下文
+     */
+    private final IRContext context;
+
+    public IRGenerator() {
+        this(new IRContext());
+    }
+
+    /**
+     * @param context 分配 IR 变量的上下文, 生成的 IR 中的变量都属于它
+     */
+    public IRGenerator(IRContext context) {
+        this.context = context;
+        this.buffer = new IRBuffer(context);
+    }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO
         var tokenKind = currentToken.getKind().getIdentifier();
         if (tokenKind.equals("IntConst")) {
-            // 若是IntConst类终结符，则压入其字面值
+            // 若是IntConst类终结符，则记录其字面值
             var val = Integer.parseInt(currentToken.getText());
-            synStk.push(IRImmediate.of(val));
+            values.set(0, IRImmediate.of(val));
         } else if (tokenKind.equals("id")) {
             // 若是id类终结符，则检查符号表中是否存在记录
-            // 若存在，则压入变量标识符
+            // 若存在，则记录变量标识符; 未在符号表中登记的标识符会使 get 抛出异常
             var val = currentToken.getText();
-            if (!table.has(val)) {
-                throw new RuntimeException("未在符号表中登记的标识符: " + val);
-            }
-            synStk.push(IRVariable.named(val));
-        } else {
-            // 若不是上述两类终结符，则压入空记录
-            synStk.push(new IRNullValue());
+            table.get(val);
+            values.set(0, context.named(val));
         }
+        // 其余终结符没有值, 不会被通知, 见 isInterestedIn
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         // TODO
+        // 产生式体的值由驱动程序在规约后弹出, 未设置左部的值时沿用右部第一个符号的值
         switch (production.index()) {
             case 6 -> { // S -> id = E
-                // 弹栈并获得E.val
-                var eVal = synStk.pop(); // E
-                synStk.pop(); // =
-                var idVal = synStk.pop(); // id
+                var eVal = values.get(0); // E
+                var idVal = values.get(2); // id
                 // gencode(id.val = E.val);
-                instructions.add(Instruction.createMov((IRVariable) idVal, eVal));
-                // S无需val属性，压入空记录占位
-                synStk.push(new IRNullValue()); // S
+                emit().addMov((IRVariable) idVal, eVal);
             }
             case 7 -> { // S -> return E
-                var val = synStk.pop(); // E
-                synStk.pop(); // return
+                var val = values.get(0); // E
                 // gencode(return E.val);
-                instructions.add(Instruction.createRet(val));
-                // S无需val属性，压入空记录占位
-                synStk.push(new IRNullValue()); // S
+                emit().addRet(val);
             }
             case 8 -> { // E1 -> E2 + A
-                var aVal = synStk.pop(); // A
-                synStk.pop(); // +
-                var e2Val = synStk.pop(); // E2
+                var aVal = values.get(0); // A
+                var e2Val = values.get(2); // E2
                 // E1.val = newtemp();
-                var e1Val = IRVariable.temp();
-                synStk.push(e1Val); // E1
+                var e1Val = context.temp();
+                values.setResult(e1Val); // E1
                 // gencode(E1.val = E2.val + A.val);
-                instructions.add(Instruction.createAdd(e1Val, e2Val, aVal));
+                emit().addBinary(InstructionKind.ADD, e1Val, e2Val, aVal);
             }
             case 9 -> { // E1 -> E2 – A
-                var aVal = synStk.pop(); // A
-                synStk.pop(); // -
-                var e2Val = synStk.pop(); // E2
+                var aVal = values.get(0); // A
+                var e2Val = values.get(2); // E2
                 // E1.val = newtemp();
-                var e1Val = IRVariable.temp();
-                synStk.push(e1Val); // E1
+                var e1Val = context.temp();
+                values.setResult(e1Val); // E1
                 // gencode(E1.val = E2.val - A.val);
-                instructions.add(Instruction.createSub(e1Val, e2Val, aVal));
-            }
-            case 10 -> { // E -> A
-                // 弹栈，获取值信息，再将同样的值入栈。操作前后栈不变。
-                // E.val = A.val;
-                // do nothing
+                emit().addBinary(InstructionKind.SUB, e1Val, e2Val, aVal);
             }
             case 11 -> { // A1 -> A2 * B
-                var bVal = synStk.pop(); // B
-                synStk.pop(); // *
-                var a2Val = synStk.pop(); // A2
+                var bVal = values.get(0); // B
+                var a2Val = values.get(2); // A2
                 // A1.val = newtemp();
-                var a1Val = IRVariable.temp();
-                synStk.push(a1Val);
+                var a1Val = context.temp();
+                values.setResult(a1Val); // A1
                 // gencode(A1.val = A2.val * B.val);
-                instructions.add(Instruction.createMul(a1Val, a2Val, bVal));
-            }
-            case 12 -> { // A -> B
-                // 弹栈，获取值信息，再将同样的值入栈。操作前后栈不变。
-                // A.val = B.val
-                // do nothing
+                emit().addBinary(InstructionKind.MUL, a1Val, a2Val, bVal);
             }
             case 13 -> { // B -> ( E )
-                // 弹栈，获取值信息，再将同样的值入栈。
-                synStk.pop(); // (
-                var eVal = synStk.pop(); // E
-                synStk.pop(); // )
                 // B.val = E.val;
-                synStk.push(eVal); // B
-            }
-            case 14 -> { // B -> id
-                // 弹栈，获取值信息，再将同样的值入栈。操作前后栈不变。
-                // B.val = lookup(id.name);
-                // do nothing
-            }
-            case 15 -> { // B -> IntConst
-                // 弹栈，获取值信息，再将同样的值入栈。操作前后栈不变。
-                // B.val = IntConst.lexval;
-                // do nothing
+                values.setResult(values.get(1)); // B
             }
             default -> {
-                // 其他产生式均不涉及类型信息,直接根据符号数量出入栈即可
-                var symbolCnt = production.body().size();
-                while (symbolCnt-- != 0) {
-                    synStk.pop();
-                }
-                synStk.push(new IRNullValue());
+                // E -> A, A -> B, B -> id, B -> IntConst 直接沿用右部的值, 其他产生式不涉及值, 见 isInterestedIn
             }
         }
     }
 
+    @Override
+    public boolean isInterestedIn(Production production) {
+        return switch (production.index()) {
+            case 6, 7, 8, 9, 11, 13 -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public boolean isInterestedIn(TokenKind tokenKind) {
+        return switch (tokenKind.getIdentifier()) {
+            case "IntConst", "id" -> true;
+            default -> false;
+        };
+    }
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -167,20 +163,46 @@ public class IRGenerator implements ActionObserver {
         this.table = table;
     }
 
+    @Override
+    public void setAttributeStack(AttributeStack stack) {
+        this.values = stack.newColumn();
+    }
+
+    /**
+     * @return 生成的 IR 中的变量所属的上下文
+     */
+    public IRContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return 生成的 IR, 各阶段可以直接逐条读取而不必构造 {@link Instruction}
+     */
+    public IRBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return 生成的 IR 构造成的指令列表, 第一次调用时才构造
+     */
     public List<Instruction> getIR() {
         // TODO
+        if (instructions == null) {
+            instructions = new ArrayList<>(buffer.asInstructions());
+        }
         return instructions;
     }
 
     public void dumpIR(String path) {
-        FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
+        buffer.dump(path);
     }
 
     /**
-     * 综合属性值的空记录,用于在栈中占位
+     * @return 存放新指令的 buffer, 同时使之前由 getIR 构造的列表失效
      */
-    static class IRNullValue implements IRValue {
+    private IRBuffer emit() {
+        instructions = null;
+        return buffer;
     }
-
 }
 
@@ -0,0 +1,49 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可以在分析结束后取出规约序列的 {@link ProductionCollector}
+ * <br>
+ * {@link ProductionCollector} 只能输出到文件, 且不应修改; 并行与增量编译需要在内存中拼接各部分的规约序列, 因此在这里另外记录一份.
+ */
+public class RecordingProductionCollector extends ProductionCollector implements ExtendedActionObserver {
+    public RecordingProductionCollector(Production beginProduction) {
+        super(beginProduction);
+        this.beginProduction = beginProduction;
+    }
+
+    private final Production beginProduction;
+    private final List<Production> reducedProductions = new ArrayList<>();
+
+    /**
+     * @return 按规约顺序排列的所有规约到的产生式, 与 {@link #dumpToFile(String)} 输出的相同
+     */
+    public List<Production> getReducedProductions() {
+        return Collections.unmodifiableList(reducedProductions);
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        super.whenReduce(currentStatus, production);
+        reducedProductions.add(production);
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        super.whenAccept(currentStatus);
+        reducedProductions.add(beginProduction);
+    }
+
+    @Override
+    public boolean isInterestedIn(TokenKind tokenKind) {
+        // 只记录规约, 不关心移入
+        return false;
+    }
+}
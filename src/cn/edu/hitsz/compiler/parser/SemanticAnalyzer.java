@@ -1,16 +1,15 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
-
-import java.util.ArrayDeque;
-import java.util.Deque;
+import cn.edu.hitsz.compiler.symtab.SymbolTableEntry;
 
 // TODO: 实验三: 实现语义分析
-public class SemanticAnalyzer implements ActionObserver {
+public class SemanticAnalyzer implements ExtendedActionObserver {
 
     /**
      * 符号表
@@ -18,9 +17,9 @@ public class SemanticAnalyzer implements ActionObserver {
     SymbolTable table;
 
     /**
-     * 综合属性栈，负责记录类型信息和标识符名
+     * 共享属性栈中属于语义分析的一列, 负责记录类型信息 (SourceCodeType) 和标识符的符号表条目 (SymbolTableEntry)
      */
-    Deque<LexVal> synStk = new ArrayDeque<>();
+    AttributeStack.Column<Object> attributes;
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -34,52 +33,52 @@ public class SemanticAnalyzer implements ActionObserver {
     public void whenReduce(Status currentStatus, Production production) {
         // TODO: 该过程在遇到 reduce production 时要采取的代码动作
         // 执行除生成三地址码以外的语义动作
-        // 根据产生式执行对应动作
+        // 根据产生式执行对应动作, 产生式体的属性由驱动程序在规约后弹出
         switch (production.index()) {
             case 4 -> { // S -> D id
-                // 获取标识符名字
-                // 产生式右部弹栈，并从栈中获取标识符id的名字和非终结符D的类型
-                var idName = synStk.pop(); // id
-                var type = synStk.pop(); // D
+                // 从栈中获取标识符id的符号表条目和非终结符D的类型
+                // D 的类型由 D -> int 直接沿用 int 的属性得到
+                if (!(attributes.get(0) instanceof SymbolTableEntry id)) {
+                    throw new RuntimeException("This lex val is not a symbol table entry !");
+                }
+                if (!(attributes.get(1) instanceof SourceCodeType type)) {
+                    throw new RuntimeException("This symbol is not a source code type !");
+                }
                 // 更新符号表中的类型信息
-                table.get(idName.getIdName()).setType(type.getSourceCodeType());
-                // 左部无需类型信息，压入空记录占位
-                synStk.push(new LexVal()); // S
-            }
-            case 5 -> { // D -> int
-                // 弹栈，获取类型信息，然后设置左部符号属性并将其压栈
-                // 该过程执行前后综合属性栈没有变化，所以不需要执行更新栈的代码
-                // do nothing
+                id.setType(type);
             }
             default -> {
-                // 其他产生式均不涉及类型信息,直接根据符号数量出入栈即可
-                var symbolCnt = production.body().size();
-                while (symbolCnt-- != 0) {
-                    synStk.pop();
-                }
-                synStk.push(new LexVal());
+                // 其他产生式均不涉及类型信息, 见 isInterestedIn
             }
         }
     }
 
+    @Override
+    public boolean isInterestedIn(Production production) {
+        // 只有 S -> D id 需要动作; 其他产生式的左部或者沿用右部第一个符号的属性 (如 D -> int), 或者其属性不会被用到
+        return production.index() == 4;
+    }
+
+    @Override
+    public boolean isInterestedIn(TokenKind tokenKind) {
+        // 只有类型关键字与标识符带有属性
+        return switch (tokenKind.getIdentifier()) {
+            case "int", "id" -> true;
+            default -> false;
+        };
+    }
+
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO: 该过程在遇到 shift 时要采取的代码动作
         var tokenKind = currentToken.getKind().getIdentifier();
         if (tokenKind.equals("int")) {
-            // 若是类型关键字终结符，则压入类型信息
-            synStk.push(new LexVal(SourceCodeType.Int));
+            // 若是类型关键字终结符，则记录类型信息
+            attributes.set(0, SourceCodeType.Int);
         } else if (tokenKind.equals("id")) {
-            // 若是id类终结符，则检查符号表中是否存在记录
-            // 若存在，则压入变量标识符
-            var val = currentToken.getText();
-            if (!table.has(val)) {
-                throw new RuntimeException("未在符号表中登记的标识符: " + val);
-            }
-            synStk.push(new LexVal(val));
-        } else {
-            // 若不是类型关键字终结符，也不是id类终结符，则压入空记录
-            synStk.push(new LexVal());
+            // 若是id类终结符，则从符号表中取出其条目记录下来, 归约时无需再次查找
+            // 未在符号表中登记的标识符会使 get 抛出异常
+            attributes.set(0, table.get(currentToken.getText()));
         }
     }
 
@@ -90,42 +89,8 @@ public class SemanticAnalyzer implements ActionObserver {
         this.table = table;
     }
 
-    static class LexVal {
-        String idName;
-
-        SourceCodeType type;
-
-        public LexVal(SourceCodeType type) {
-            this.type = type;
-        }
-
-        public LexVal() {}
-
-        public LexVal(String idName) {
-            this.idName = idName;
-        }
-
-        public boolean isIdName(){
-            return this.idName != null;
-        }
-
-        public boolean isType(){
-            return this.type != null;
-        }
-
-        public String getIdName() {
-            if (isIdName()) {
-                return idName;
-            }
-            throw new RuntimeException("This lex val is not a name !");
-        }
-
-        public SourceCodeType getSourceCodeType() {
-            if (isType()) {
-                return type;
-            }
-            throw new RuntimeException("This symbol is not a source code type !");
-        }
+    @Override
+    public void setAttributeStack(AttributeStack stack) {
+        this.attributes = stack.newColumn();
     }
 }
-
@@ -2,6 +2,7 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
@@ -19,20 +20,48 @@ import java.util.*;
  */
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
-    private final List<ActionObserver> observers = new ArrayList<>();
+    // 用数组存放观察者, 使每次通知时的遍历不需要分配迭代器
+    private ActionObserver[] observers = new ActionObserver[0];
+    // 按产生式的 index 分组的, 关心该产生式的规约的观察者
+    private ActionObserver[][] reduceObservers = new ActionObserver[0][];
+    // 按词法单元类型的码点 + 1 (EOF 的码点为 -1) 分组的, 关心该类词法单元的移入的观察者
+    private ActionObserver[][] shiftObservers = new ActionObserver[0][];
 
-    // 输入的token序列
-    private final Deque<Token> tokenDeque = new ArrayDeque<>();
-    // 符号栈
-    private final Stack<Symbol> symbolStack = new Stack<>();
-    // 状态栈
-    private final Stack<Status> statusStack = new Stack<>();
-    // LR分析表
-    private LRTable lrTable;
+    // 输入的token序列, 按需从中取出 token, 以便配合流式词法分析
+    private Iterator<Token> tokenIterator;
+    // 当前向前看的 token, 为 null 时表示输入已耗尽
+    private Token lookahead;
+    // 分析栈: 状态栈与符号栈共用同一个栈顶下标, 第 i 层的状态即移入或规约出第 i 层的符号之后转移到的状态
+    // 状态直接存放编号; 符号按种类存放在两个平行数组之一中, 另一个数组的对应位置为 null
+    // 压栈与弹栈只移动栈顶下标, 不会为每个符号分配对象
+    private int[] statusStack = new int[64];
+    private Token[] tokenStack = new Token[64];
+    private NonTerminal[] nonTerminalStack = new NonTerminal[64];
+    // 栈顶的下标
+    private int top = -1;
+    // 供观察者共享的综合属性栈, 与分析栈同步压栈与弹栈
+    private final AttributeStack attributes = new AttributeStack();
+    // LR分析表的紧凑形式
+    private CompiledLRTable lrTable;
+    private final Mode mode;
+    // ChainElimination 模式下按 (栈中单产生式下面一层的状态 * 产生式数 + 单产生式) 记录的单产生式链的终点, 见 collapseChain
+    // 0 表示尚未计算, -1 表示不能折叠, 否则为终点状态 + 1
+    private int[] chainTargets;
+    // 与 chainTargets 对应的, 链上最后一个产生式的头部
+    private NonTerminal[] chainHeads;
 
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
+        this(symbolTable, Mode.Standard);
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param mode        驱动程序的运行方式, 两种方式对合法输入的分析结果相同
+     */
+    public SyntaxAnalyzer(SymbolTable symbolTable, Mode mode) {
         this.symbolTable = symbolTable;
+        this.mode = mode;
     }
 
     /**
@@ -41,30 +70,63 @@ public class SyntaxAnalyzer {
      * @param observer 观察者
      */
     public void registerObserver(ActionObserver observer) {
-        observers.add(observer);
+        observers = Arrays.copyOf(observers, observers.length + 1);
+        observers[observers.length - 1] = observer;
         observer.setSymbolTable(symbolTable);
+        if (observer instanceof ExtendedActionObserver extended) {
+            extended.setAttributeStack(attributes);
+        }
+        groupObservers();
     }
 
     /**
-     * 在执行 shift 动作时通知各个观察者
+     * 按各观察者声明的兴趣 (见 {@link ExtendedActionObserver#isInterestedIn(Production)}) 重新分组,
+     * 使每次移入/规约只需遍历关心它的观察者, 而不必逐个调用后再由观察者自己判断
+     */
+    private void groupObservers() {
+        final var productions = GrammarInfo.getProductionsInOrder();
+        reduceObservers = new ActionObserver[productions.size() + 1][];
+        Arrays.fill(reduceObservers, observers);
+        for (final var production : productions) {
+            reduceObservers[production.index()] = Arrays.stream(observers)
+                .filter(observer -> !(observer instanceof ExtendedActionObserver extended) || extended.isInterestedIn(production))
+                .toArray(ActionObserver[]::new);
+        }
+
+        final var tokenKinds = TokenKind.allAllowedTokenKinds().values();
+        shiftObservers = new ActionObserver[tokenKinds.stream().mapToInt(TokenKind::getCode).max().orElse(-1) + 2][];
+        Arrays.fill(shiftObservers, observers);
+        for (final var tokenKind : tokenKinds) {
+            shiftObservers[tokenKind.getCode() + 1] = Arrays.stream(observers)
+                .filter(observer -> !(observer instanceof ExtendedActionObserver extended) || extended.isInterestedIn(tokenKind))
+                .toArray(ActionObserver[]::new);
+        }
+    }
+
+    /**
+     * 在执行 shift 动作时通知关心该类词法单元的观察者
      *
      * @param currentStatus 当前状态
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
+        final var slot = currentToken.getKind().getCode() + 1;
+        final var listeners = slot >= 0 && slot < shiftObservers.length ? shiftObservers[slot] : observers;
+        for (final var listener : listeners) {
             listener.whenShift(currentStatus, currentToken);
         }
     }
 
     /**
-     * 在执行 reduce 动作时通知各个观察者
+     * 在执行 reduce 动作时通知关心该产生式的观察者
      *
      * @param currentStatus 当前状态
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
+        final var index = production.index();
+        final var listeners = index >= 0 && index < reduceObservers.length ? reduceObservers[index] : observers;
+        for (final var listener : listeners) {
             listener.whenReduce(currentStatus, production);
         }
     }
@@ -85,16 +147,17 @@ public class SyntaxAnalyzer {
         // 你可以自行选择要如何存储词法单元, 譬如使用迭代器, 或是栈, 或是干脆使用一个 list 全存起来
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
-        tokens.forEach(this.tokenDeque::offer);
-        symbolStack.push(new Symbol(Token.eof()));
+        this.tokenIterator = tokens.iterator();
+        advance();
     }
 
     public void loadLRTable(LRTable table) {
         // TODO: 加载 LR 分析表
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
-        this.lrTable = table;
-        statusStack.push(lrTable.getInit());
+        this.lrTable = CompiledLRTable.of(table);
+        // 栈底为起始状态与 EOF
+        push(lrTable.getInitStatus(), Token.eof(), null);
     }
 
     public void run() {
@@ -102,77 +165,233 @@ public class SyntaxAnalyzer {
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
-        while (!tokenDeque.isEmpty()) {
-            final var action = lrTable.getAction(statusStack.peek(), tokenDeque.peek());
-            var isAccept = false;
-            var isError = false;
-            switch (action.getKind()) {
-                case Shift -> {
-                    callWhenInShift(statusStack.peek(), tokenDeque.peek());
-                    statusStack.push(action.getStatus());
-                    symbolStack.push(new Symbol(tokenDeque.poll()));
+        try {
+            if (mode == Mode.ChainElimination) {
+                runEliminatingChains();
+            } else {
+                runStepByStep();
+            }
+        } finally {
+            closeTokens();
+        }
+    }
+
+    /**
+     * {@link Mode#Standard} 模式下的驱动程序, 逐个查 ACTION 表
+     */
+    private void runStepByStep() {
+        while (lookahead != null) {
+            final var status = statusStack[top];
+            final var action = lrTable.getAction(status, lookahead);
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    attributes.push();
+                    callWhenInShift(lrTable.getStatus(status), lookahead);
+                    push(CompiledLRTable.payloadOf(action), lookahead, null);
+                    advance();
                 }
-                case Reduce -> {
-                    final var production = action.getProduction();
-                    callWhenInReduce(statusStack.peek(), production);
-                    var len = production.body().size();
-                    while (len-- != 0) {
-                        statusStack.pop();
-                        symbolStack.pop();
+                case CompiledLRTable.REDUCE -> {
+                    final var productionIndex = CompiledLRTable.payloadOf(action);
+                    final var production = lrTable.getProduction(productionIndex);
+                    final var length = lrTable.getProductionLength(productionIndex);
+                    callWhenInReduce(lrTable.getStatus(status), production);
+                    attributes.reduce(length);
+                    top -= length;
+                    final var gotoStatus = lrTable.getGoto(statusStack[top], productionIndex);
+                    if (gotoStatus < 0) {
+                        throw new RuntimeException("语法分析出错");
                     }
-                    symbolStack.push(new Symbol(production.head()));
-                    final var gotoStatus = lrTable.getGoto(statusStack.peek(), symbolStack.peek().getNonTerminal());
-                    statusStack.push(gotoStatus);
+                    push(gotoStatus, null, production.head());
                 }
-                case Accept -> {
-                    isAccept = true;
-                    callWhenInAccept(statusStack.peek());
+                case CompiledLRTable.ACCEPT -> {
+                    callWhenInAccept(lrTable.getStatus(status));
+                    return;
                 }
-                case Error -> isError = true;
-            }
-
-            if (isAccept) {
-                break;
-            } else if (isError) {
-                throw new RuntimeException("语法分析出错");
+                default -> throw new RuntimeException("语法分析出错");
             }
         }
     }
 
-    static class Symbol {
-        Token token;
-        NonTerminal nonTerminal;
+    /**
+     * {@link Mode#ChainElimination} 模式下的驱动程序
+     * <br>
+     * 与 {@link #run()} 相比有三处不同:
+     * <ul>
+     *     <li>当前状态的动作与向前看符号无关时 (见 {@link CompiledLRTable#getDefaultReduction(int)}), 直接规约而不查 ACTION 表</li>
+     *     <li>体长为 1 的产生式的规约不弹栈也不压栈, 只把栈顶的状态原地替换为 GOTO 的结果</li>
+     *     <li>没有观察者关心的单产生式规约, 连同其后一串同样没有观察者关心的单产生式规约 (如 B -> id 之后的 A -> B, E -> A),
+     *     一步跳到链的终点, 既不通知观察者也不动属性栈, 见 {@link #collapseChain(int, int)}.
+     *     有观察者关心的规约仍逐个进行, 例如注册了 {@link ProductionCollector} 时它会收到完整的规约序列</li>
+     * </ul>
+     */
+    private void runEliminatingChains() {
+        // 观察者在分析开始前就已注册完毕, 链的终点按需计算后一直有效
+        final var productionSlots = lrTable.getProductionSlots();
+        chainTargets = new int[lrTable.getStatusCount() * productionSlots];
+        chainHeads = new NonTerminal[chainTargets.length];
+
+        while (lookahead != null) {
+            final var status = statusStack[top];
+            var action = lrTable.getDefaultReduction(status);
+            if (action == CompiledLRTable.ERROR) {
+                action = lrTable.getAction(status, lookahead);
+            }
 
-        public Symbol(Token token){
-            this.token = token;
-            this.nonTerminal = null;
-        }
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    attributes.push();
+                    callWhenInShift(lrTable.getStatus(status), lookahead);
+                    push(CompiledLRTable.payloadOf(action), lookahead, null);
+                    advance();
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final var productionIndex = CompiledLRTable.payloadOf(action);
+                    final var length = lrTable.getProductionLength(productionIndex);
+                    if (length == 1) {
+                        final var slot = statusStack[top - 1] * productionSlots + productionIndex;
+                        if (chainTargets[slot] == 0) {
+                            chainTargets[slot] = collapseChain(statusStack[top - 1], productionIndex);
+                        }
+                        if (chainTargets[slot] > 0) {
+                            statusStack[top] = chainTargets[slot] - 1;
+                            tokenStack[top] = null;
+                            nonTerminalStack[top] = chainHeads[slot];
+                            continue;
+                        }
+                    }
 
-        public Symbol(NonTerminal nonTerminal){
-            this.token = null;
-            this.nonTerminal = nonTerminal;
+                    final var production = lrTable.getProduction(productionIndex);
+                    callWhenInReduce(lrTable.getStatus(status), production);
+                    attributes.reduce(length);
+                    if (length == 1) {
+                        // 弹出一个再压入一个, 栈顶下标不变, 原地替换即可
+                        final var gotoStatus = lrTable.getGoto(statusStack[top - 1], productionIndex);
+                        if (gotoStatus < 0) {
+                            throw new RuntimeException("语法分析出错");
+                        }
+                        statusStack[top] = gotoStatus;
+                        tokenStack[top] = null;
+                        nonTerminalStack[top] = production.head();
+                    } else {
+                        top -= length;
+                        final var gotoStatus = lrTable.getGoto(statusStack[top], productionIndex);
+                        if (gotoStatus < 0) {
+                            throw new RuntimeException("语法分析出错");
+                        }
+                        push(gotoStatus, null, production.head());
+                    }
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    callWhenInAccept(lrTable.getStatus(status));
+                    return;
+                }
+                default -> throw new RuntimeException("语法分析出错");
+            }
         }
+    }
 
-        public boolean isToken(){
-            return this.token != null;
+    /**
+     * 计算从规约单产生式 production 开始的单产生式链的终点, 并把链上最后一个产生式的头部记入 chainHeads
+     * <br>
+     * 规约单产生式时栈中它下面的状态 below 不变, 因此链上每一步都是 GOTO(below, 产生式头). 到达的状态若有与向前看符号无关的单产生式规约,
+     * 且没有观察者关心它, 就接着走下去. 没有观察者关心的单产生式规约对属性栈也没有影响 (沿用产生式体的属性), 所以可以整条跳过.
+     *
+     * @param below      规约前栈顶下面一层的状态
+     * @param production 单产生式的 index
+     * @return 终点状态 + 1; 若有观察者关心 production 或 GOTO 出错, 则为 -1, 由调用者逐步规约
+     */
+    private int collapseChain(int below, int production) {
+        if (hasReduceObservers(production)) {
+            return -1;
         }
 
-        public boolean isNonTerminal(){
-            return this.nonTerminal != null;
+        var last = production;
+        var status = lrTable.getGoto(below, production);
+        if (status < 0) {
+            return -1;
         }
 
-        public Token getToken() {
-            if (isToken()) {
-                return token;
+        while (true) {
+            final var action = lrTable.getDefaultReduction(status);
+            if (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE) {
+                break;
+            }
+            final var next = CompiledLRTable.payloadOf(action);
+            if (lrTable.getProductionLength(next) != 1 || hasReduceObservers(next)) {
+                break;
             }
-            throw new RuntimeException("This symbol is not a token !");
+            final var target = lrTable.getGoto(below, next);
+            if (target < 0) {
+                break;
+            }
+            last = next;
+            status = target;
+        }
+
+        chainHeads[below * lrTable.getProductionSlots() + production] = lrTable.getProduction(last).head();
+        return status + 1;
+    }
+
+    /**
+     * @param production 产生式的 index
+     * @return 规约该产生式时是否需要通知观察者
+     */
+    private boolean hasReduceObservers(int production) {
+        final var index = lrTable.getProduction(production).index();
+        final var listeners = index >= 0 && index < reduceObservers.length ? reduceObservers[index] : observers;
+        return listeners.length > 0;
+    }
+
+    /**
+     * 驱动程序的运行方式
+     */
+    public enum Mode {
+        /**
+         * 每一步都按向前看符号查 ACTION 表, 每次规约都弹栈并压栈
+         */
+        Standard,
+        /**
+         * 跳过与向前看符号无关的查表, 并消除单产生式链, 见 {@link #runEliminatingChains()}
+         */
+        ChainElimination
+    }
+
+    /**
+     * 将状态与符号一同压入分析栈, 栈满时扩容
+     *
+     * @param status      转移到的状态
+     * @param token       移入的词法单元, 压入非终结符时为 null
+     * @param nonTerminal 规约出的非终结符, 压入词法单元时为 null
+     */
+    private void push(int status, Token token, NonTerminal nonTerminal) {
+        if (++top == statusStack.length) {
+            final var capacity = statusStack.length * 2;
+            statusStack = Arrays.copyOf(statusStack, capacity);
+            tokenStack = Arrays.copyOf(tokenStack, capacity);
+            nonTerminalStack = Arrays.copyOf(nonTerminalStack, capacity);
         }
+        statusStack[top] = status;
+        tokenStack[top] = token;
+        nonTerminalStack[top] = nonTerminal;
+    }
 
-        public NonTerminal getNonTerminal() {
-            if (isNonTerminal()) {
-                return nonTerminal;
+    /**
+     * 关闭 token 的输入. 流式词法分析的迭代器持有打开的文件, 语法分析出错或提前结束时也要关闭
+     */
+    private void closeTokens() {
+        if (tokenIterator instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new RuntimeException("关闭 token 输入时出错", e);
             }
-            throw new RuntimeException("This symbol is not a non terminal !");
         }
     }
+
+    /**
+     * 消耗当前的向前看 token, 并从输入中读取下一个
+     */
+    private void advance() {
+        lookahead = tokenIterator.hasNext() ? tokenIterator.next() : null;
+    }
 }
@@ -0,0 +1,554 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * LR 分析表的紧凑形式, 供语法分析驱动程序的主循环使用
+ * <br>
+ * {@link LRTable} 中每个状态的 ACTION 与 GOTO 都存放在 HashMap 中, 每走一步都要对 TokenKind/NonTerminal 求 hash.
+ * 此类在加载时把终结符与非终结符依次编号, 把动作编码为 int, 再像 yacc/bison 那样压缩存放:
+ * <ul>
+ *     <li>ACTION 中每个动作编码为 {@code (载荷 << 2) | 种类}, 移入的载荷为目标状态, 规约的载荷为产生式的 index, 0 即为错误</li>
+ *     <li>ACTION 的每一行取出现最多的规约作为该行的默认动作, 该行的错误项也一并改为默认规约.
+ *     对于合法的输入这不会改变分析结果, 对于非法的输入也只是推迟到下一次移入之前才报错</li>
+ *     <li>GOTO 的每一列 (非终结符) 取出现最多的目标状态作为该列的默认目标, GOTO 中的错误项在分析合法前缀时不会被查到, 同样并入默认值</li>
+ *     <li>去掉默认值后剩下的稀疏的行 (列) 以首次适配的方式错位叠放在同一个数组中 (即 comb vector),
+ *     base 记录每行的起始位置, check 记录每个位置属于哪一行</li>
+ * </ul>
+ * 于是查表只需 {@code check[base[s] + t] == s ? table[base[s] + t] : default[s]}.
+ * 终结符的编号通过 TokenKind 的码点直接查数组得到, 产生式的头部与长度也预先按产生式的 index 存进数组.
+ *
+ * @see #of(LRTable)
+ */
+public class CompiledLRTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    /**
+     * 获取分析表的紧凑形式; 同一张表只在第一次调用时构造, 之后的调用 (包括其他线程) 得到同一个对象
+     *
+     * @param table LR 分析表
+     * @return 该表的紧凑形式
+     */
+    public static CompiledLRTable of(LRTable table) {
+        synchronized (compiledTables) {
+            return compiledTables.computeIfAbsent(table, key -> {
+                final var contents = Contents.of(key);
+                return new CompiledLRTable(contents.statuses().toArray(new Status[0]), contents.terminals(),
+                    Dense.encode(contents.statuses(), contents.terminals(), contents.nonTerminals()));
+            });
+        }
+    }
+
+    /**
+     * 登记一张表已有的紧凑形式, 供 {@link TableCache} 在读取缓存时使用, 之后 {@link #of(LRTable)} 不必再构造
+     */
+    static void remember(LRTable table, CompiledLRTable compiled) {
+        synchronized (compiledTables) {
+            compiledTables.put(table, compiled);
+        }
+    }
+
+    // LRTable 没有重写 equals, 以对象本身为键; 表不再被使用时其紧凑形式随之回收
+    private static final Map<LRTable, CompiledLRTable> compiledTables = new WeakHashMap<>();
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的种类, 为 {@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT} 之一
+     */
+    public static int kindOf(int action) {
+        return action & 3;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 移入动作的目标状态或规约动作的产生式 index
+     */
+    public static int payloadOf(int action) {
+        return action >>> 2;
+    }
+
+    /**
+     * @return 起始状态
+     */
+    public int getInitStatus() {
+        return 0;
+    }
+
+    /**
+     * 根据当前状态与当前词法单元获取对应动作
+     *
+     * @param status 当前状态
+     * @param token  当前词法单元
+     * @return 编码后的动作
+     */
+    public int getAction(int status, Token token) {
+        final var slot = token.getKind().getCode() + 1;
+        if (slot < 0 || slot >= terminalIndexByCode.length) {
+            return ERROR;
+        }
+
+        final var terminal = terminalIndexByCode[slot];
+        if (terminal < 0) {
+            return ERROR;
+        }
+
+        final var idx = actionBase[status] + terminal;
+        return actionCheck[idx] == status ? actionTable[idx] : defaultAction[status];
+    }
+
+    /**
+     * 获取与向前看符号无关的规约: 若某状态对所有终结符的动作都是同一个规约 (错误项已并入默认规约),
+     * 则驱动程序不必读取向前看符号, 也不必查 ACTION 表即可直接规约
+     *
+     * @param status 当前状态
+     * @return 编码后的规约动作, 该状态的动作与向前看符号有关时为 {@link #ERROR}
+     */
+    public int getDefaultReduction(int status) {
+        return defaultReduction[status];
+    }
+
+    /**
+     * 根据当前状态与刚规约的产生式获得应转移到的状态
+     *
+     * @param status     规约后栈顶的状态
+     * @param production 规约的产生式的 index
+     * @return 应转移到的状态, 为 -1 时表示出错
+     */
+    public int getGoto(int status, int production) {
+        final var nonTerminal = productionHead[production];
+        final var idx = gotoBase[nonTerminal] + status;
+        return gotoCheck[idx] == nonTerminal ? gotoTable[idx] : defaultGoto[nonTerminal];
+    }
+
+    /**
+     * @return 状态数
+     */
+    public int getStatusCount() {
+        return statuses.length;
+    }
+
+    /**
+     * @return 产生式 index 的上界, 即 {@link #getProduction(int)} 可接受的参数个数
+     */
+    public int getProductionSlots() {
+        return productions.length;
+    }
+
+    /**
+     * @param production 产生式的 index
+     * @return 产生式体的长度
+     */
+    public int getProductionLength(int production) {
+        return productionLength[production];
+    }
+
+    /**
+     * @param production 产生式的 index
+     * @return 对应的产生式
+     */
+    public Production getProduction(int production) {
+        return productions[production];
+    }
+
+    /**
+     * @param status 状态编号
+     * @return 对应的 Status 对象, 供通知观察者时使用
+     */
+    public Status getStatus(int status) {
+        return statuses[status];
+    }
+
+    /**
+     * @return 压缩后的 ACTION 与 GOTO 占用的字节数 (含数组对象头, 不含产生式信息)
+     */
+    public long getPackedBytes() {
+        return arrayBytes(actionBase) + arrayBytes(actionCheck) + arrayBytes(actionTable) + arrayBytes(defaultAction)
+            + arrayBytes(gotoBase) + arrayBytes(gotoCheck) + arrayBytes(gotoTable) + arrayBytes(defaultGoto);
+    }
+
+    /**
+     * @return 不压缩, 直接以 {@code 状态 * 符号数 + 符号编号} 索引的两个 int 数组存放 ACTION 与 GOTO 时占用的字节数
+     */
+    public long getDenseBytes() {
+        return 2 * ARRAY_HEADER_BYTES + (long) statuses.length * (terminalCount + nonTerminalCount) * Integer.BYTES;
+    }
+
+    /**
+     * 估算各状态中 ACTION 与 GOTO 两个 HashMap 占用的字节数, 用于与 {@link #getPackedBytes()} 对比
+     * <br>
+     * 按 64 位 JVM 开启压缩指针估算: Status 对象 24 字节, 每个 HashMap 48 字节加上桶数组 (16 + 4 * 容量, 容量为不小于 size / 0.75 的 2 的幂, 至少 16),
+     * 每个条目一个 32 字节的 Node, 每个移入/规约动作一个 24 字节的 Action. 接受/错误动作与错误状态是单例, 终结符/非终结符与产生式为各表共享, 均不计入.
+     *
+     * @return 估算的字节数
+     */
+    public long estimateStatusMapBytes() {
+        var bytes = 0L;
+        for (final var status : statuses) {
+            bytes += 24 + hashMapBytes(status.action().size()) + hashMapBytes(status.goto_().size());
+            bytes += 24L * status.action().values().stream()
+                .filter(action -> action.getKind() == Action.ActionKind.Shift || action.getKind() == Action.ActionKind.Reduce)
+                .count();
+        }
+        return bytes;
+    }
+
+    private static long hashMapBytes(int size) {
+        var capacity = 16;
+        while (capacity * 0.75 < size) {
+            capacity *= 2;
+        }
+        return 48 + 16 + 4L * capacity + 32L * size;
+    }
+
+    /**
+     * 一张 LRTable 的全部状态, 以及为之编号的终结符与非终结符
+     * <br>
+     * LRTable 只公开起始状态, 其余状态经各状态 ACTION 中的移入与 GOTO 逐个找到. 终结符与非终结符取码点文件与 grammar.txt
+     * 中的全部符号, 分别按码点与名字排序, 表中没有出现的符号只是多占几列错误项.
+     *
+     * @param statuses     按编号排列的所有状态
+     * @param terminals    终结符
+     * @param nonTerminals 非终结符
+     */
+    record Contents(List<Status> statuses, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        static Contents of(LRTable table) {
+            final var found = new HashMap<Integer, Status>();
+            final var pending = new ArrayDeque<Status>();
+            final var init = table.getInit();
+            found.put(init.index(), init);
+            pending.add(init);
+            while (!pending.isEmpty()) {
+                final var status = pending.poll();
+                final var targets = new ArrayList<>(status.goto_().values());
+                status.action().values().stream()
+                    .filter(action -> action.getKind() == Action.ActionKind.Shift)
+                    .forEach(action -> targets.add(action.getStatus()));
+                for (final var target : targets) {
+                    if (!target.isError() && found.putIfAbsent(target.index(), target) == null) {
+                        pending.add(target);
+                    }
+                }
+            }
+
+            final var statuses = found.values().stream().sorted(Comparator.comparingInt(Status::index)).toList();
+            final var terminals = TokenKind.allAllowedTokenKinds().values().stream()
+                .sorted(Comparator.comparingInt(TokenKind::getCode)).toList();
+            final var nonTerminals = GrammarInfo.getNonTerminals().values().stream()
+                .sorted(Comparator.comparing(NonTerminal::getTermName)).toList();
+            return new Contents(statuses, terminals, nonTerminals);
+        }
+    }
+
+    /**
+     * 未压缩的分析表: ACTION 与 GOTO 分别按 {@code 状态 * 符号数 + 符号编号} 索引, GOTO 中 -1 为错误.
+     * 作为构造压缩表的中间形式, 也是 {@link TableCache} 写入文件的形式.
+     */
+    static final class Dense {
+        /**
+         * 将各状态的 ACTION 与 GOTO 编码为未压缩的分析表
+         */
+        static Dense encode(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+            // 为非终结符编号
+            final var nonTerminalIndex = new HashMap<NonTerminal, Integer>();
+            for (int idx = 0; idx < nonTerminals.size(); idx++) {
+                nonTerminalIndex.put(nonTerminals.get(idx), idx);
+            }
+
+            // 收集表中出现的所有产生式
+            final var maxProduction = statusInIndexOrder.stream()
+                .flatMap(status -> status.action().values().stream())
+                .filter(action -> action.getKind() == Action.ActionKind.Reduce)
+                .mapToInt(action -> action.getProduction().index())
+                .max().orElse(0);
+            final var dense = new Dense(statusInIndexOrder.size(), terminals.size(), nonTerminals.size(), maxProduction + 1);
+
+            // 填充 ACTION 与 GOTO
+            for (final var status : statusInIndexOrder) {
+                for (int idx = 0; idx < terminals.size(); idx++) {
+                    dense.action[status.index() * terminals.size() + idx] = dense.encode(status.getAction(terminals.get(idx)), nonTerminalIndex);
+                }
+
+                for (int idx = 0; idx < nonTerminals.size(); idx++) {
+                    final var target = status.getGoto(nonTerminals.get(idx));
+                    dense.goto_[status.index() * nonTerminals.size() + idx] = target.isError() ? -1 : target.index();
+                }
+            }
+            return dense;
+        }
+
+        Dense(int statusCount, int terminalCount, int nonTerminalCount, int productionSlots) {
+            this.statusCount = statusCount;
+            this.terminalCount = terminalCount;
+            this.nonTerminalCount = nonTerminalCount;
+            this.action = new int[statusCount * terminalCount];
+            this.goto_ = new int[statusCount * nonTerminalCount];
+            this.productions = new Production[productionSlots];
+            this.productionHead = new int[productionSlots];
+        }
+
+        /**
+         * 编码一个动作, 遇到规约动作时顺带登记其产生式的信息
+         */
+        private int encode(Action action, HashMap<NonTerminal, Integer> nonTerminalIndex) {
+            return switch (action.getKind()) {
+                case Shift -> (action.getStatus().index() << 2) | SHIFT;
+                case Reduce -> {
+                    final var production = action.getProduction();
+                    final var head = nonTerminalIndex.get(production.head());
+                    if (head == null) {
+                        throw new RuntimeException("Unknown non-terminal in table: " + production.head());
+                    }
+
+                    productions[production.index()] = production;
+                    productionHead[production.index()] = head;
+                    yield (production.index() << 2) | REDUCE;
+                }
+                case Accept -> ACCEPT;
+                case Error -> ERROR;
+            };
+        }
+
+        final int statusCount;
+        final int terminalCount;
+        final int nonTerminalCount;
+        final int[] action;
+        final int[] goto_;
+        // 按产生式的 index 索引, 不在表中出现的产生式为 null
+        final Production[] productions;
+        final int[] productionHead;
+    }
+
+    /**
+     * 压缩未压缩的分析表
+     *
+     * @param statuses  按编号排列的所有状态, 要求编号恰为其在表中的位置
+     * @param terminals 终结符, 顺序与 dense 中的列相同
+     * @param dense     未压缩的分析表
+     */
+    CompiledLRTable(Status[] statuses, List<TokenKind> terminals, Dense dense) {
+        for (int idx = 0; idx < statuses.length; idx++) {
+            if (statuses[idx].index() != idx) {
+                throw new RuntimeException("Status %s is not at position %d".formatted(statuses[idx], idx));
+            }
+        }
+
+        this.terminalCount = dense.terminalCount;
+        this.nonTerminalCount = dense.nonTerminalCount;
+        this.statuses = statuses;
+        this.terminalIndexByCode = indexTerminalsByCode(terminals);
+        this.productions = dense.productions;
+        this.productionHead = dense.productionHead;
+        this.productionLength = new int[productions.length];
+        for (int idx = 0; idx < productions.length; idx++) {
+            productionLength[idx] = productions[idx] == null ? 0 : productions[idx].body().size();
+        }
+
+        // ACTION 按行 (状态) 压缩, 默认值为该行出现最多的规约, 没有规约时为错误
+        final var statusCount = dense.statusCount;
+        this.defaultAction = new int[statusCount];
+        final var actionRows = new int[statusCount][];
+        final var productionCounts = new int[productions.length];
+        for (int status = 0; status < statusCount; status++) {
+            final var row = Arrays.copyOfRange(dense.action, status * terminalCount, (status + 1) * terminalCount);
+            defaultAction[status] = mostFrequent(row, action -> kindOf(action) == REDUCE ? payloadOf(action) : -1, productionCounts, ERROR);
+            actionRows[status] = row;
+        }
+        final var packedAction = pack(actionRows, defaultAction, terminalCount, ERROR);
+        this.actionBase = packedAction.base;
+        this.actionCheck = packedAction.check;
+        this.actionTable = packedAction.table;
+
+        // 压缩后没有任何显式项的行, 其动作与向前看符号无关
+        this.defaultReduction = new int[statusCount];
+        for (int status = 0; status < statusCount; status++) {
+            if (kindOf(defaultAction[status]) == REDUCE && !ownsAny(actionCheck, actionBase[status], terminalCount, status)) {
+                defaultReduction[status] = defaultAction[status];
+            }
+        }
+
+        // GOTO 按列 (非终结符) 压缩, 默认值为该列出现最多的目标状态
+        this.defaultGoto = new int[nonTerminalCount];
+        final var gotoColumns = new int[nonTerminalCount][statusCount];
+        final var targetCounts = new int[statusCount];
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+            for (int status = 0; status < statusCount; status++) {
+                gotoColumns[nonTerminal][status] = dense.goto_[status * nonTerminalCount + nonTerminal];
+            }
+            defaultGoto[nonTerminal] = mostFrequent(gotoColumns[nonTerminal], target -> target, targetCounts, -1);
+        }
+        final var packedGoto = pack(gotoColumns, defaultGoto, statusCount, -1);
+        this.gotoBase = packedGoto.base;
+        this.gotoCheck = packedGoto.check;
+        this.gotoTable = packedGoto.table;
+    }
+
+    /**
+     * 为终结符编号, 并建立码点到编号的索引; EOF 的码点为 -1, 因此整体偏移 1
+     */
+    private static int[] indexTerminalsByCode(List<TokenKind> terminals) {
+        final var maxCode = terminals.stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        final var result = new int[maxCode + 2];
+        Arrays.fill(result, -1);
+        for (int idx = 0; idx < terminals.size(); idx++) {
+            result[terminals.get(idx).getCode() + 1] = idx;
+        }
+        return result;
+    }
+
+    /**
+     * @param values   一行的所有值
+     * @param keyOf    可作为默认值的值在 counts 中的下标, 不可作为默认值的值为 -1
+     * @param counts   计数用的数组, 调用前后都全为 0, 以便各行共用
+     * @param fallback 没有可作为默认值的值时使用的默认值
+     * @return 可作为默认值的值中出现次数最多的一个, 次数相同时取先出现的
+     */
+    private static int mostFrequent(int[] values, IntUnaryOperator keyOf, int[] counts, int fallback) {
+        var result = fallback;
+        var best = 0;
+        for (final var value : values) {
+            final var key = keyOf.applyAsInt(value);
+            if (key >= 0 && ++counts[key] > best) {
+                best = counts[key];
+                result = value;
+            }
+        }
+        for (final var value : values) {
+            final var key = keyOf.applyAsInt(value);
+            if (key >= 0) {
+                counts[key] = 0;
+            }
+        }
+        return result;
+    }
+
+    private record Packed(int[] base, int[] check, int[] table) {
+    }
+
+    /**
+     * 将各行中不等于默认值的项以首次适配的方式叠放进同一个数组, 项多的行先放
+     *
+     * @param rows     各行
+     * @param defaults 各行的默认值
+     * @param width    每行的长度
+     * @param error    表示错误的值, 与默认值一样省略
+     * @return 各行的起始位置, 每个位置所属的行 (空位为 -1) 与每个位置的值.
+     * 数组末尾留有 width 个空位, 因此任意一行的任意一列都可以直接访问而不会越界
+     */
+    private static Packed pack(int[][] rows, int[] defaults, int width, int error) {
+        final var entries = new int[rows.length][];
+        for (int row = 0; row < rows.length; row++) {
+            final var values = rows[row];
+            final var fallback = defaults[row];
+            entries[row] = IntStream.range(0, width)
+                .filter(col -> values[col] != fallback && values[col] != error)
+                .toArray();
+        }
+
+        final var order = IntStream.range(0, rows.length).boxed()
+            .sorted((lhs, rhs) -> entries[rhs].length - entries[lhs].length)
+            .mapToInt(Integer::intValue).toArray();
+
+        final var base = new int[rows.length];
+        var check = new int[Math.max(width, 16)];
+        Arrays.fill(check, -1);
+        var table = new int[check.length];
+        var used = 0;
+        var firstFree = 0;
+
+        for (final var row : order) {
+            final var columns = entries[row];
+            if (columns.length == 0) {
+                continue;
+            }
+
+            // 从第一个空位对应的起点开始尝试, 直到该行的所有项都落在空位上
+            var start = firstFree - columns[0];
+            while (true) {
+                if (start >= 0 && fits(check, start, columns)) {
+                    break;
+                }
+                start++;
+            }
+
+            final var end = start + columns[columns.length - 1] + 1;
+            if (end + width > check.length) {
+                final var capacity = Math.max(check.length * 2, end + width);
+                final var oldLength = check.length;
+                check = Arrays.copyOf(check, capacity);
+                Arrays.fill(check, oldLength, capacity, -1);
+                table = Arrays.copyOf(table, capacity);
+            }
+
+            base[row] = start;
+            for (final var col : columns) {
+                check[start + col] = row;
+                table[start + col] = rows[row][col];
+            }
+            used = Math.max(used, end);
+            while (firstFree < check.length && check[firstFree] >= 0) {
+                firstFree++;
+            }
+        }
+
+        final var length = used + width;
+        return new Packed(base, Arrays.copyOf(check, length), Arrays.copyOf(table, length));
+    }
+
+    private static boolean fits(int[] check, int start, int[] columns) {
+        for (final var col : columns) {
+            if (start + col < check.length && check[start + col] >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean ownsAny(int[] check, int base, int width, int row) {
+        for (int col = 0; col < width; col++) {
+            if (check[base + col] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final long ARRAY_HEADER_BYTES = 16;
+
+    private static long arrayBytes(int[] array) {
+        return ARRAY_HEADER_BYTES + (long) array.length * Integer.BYTES;
+    }
+
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    private final Status[] statuses;
+    private final int[] terminalIndexByCode;
+    private final Production[] productions;
+    private final int[] productionHead;
+    private final int[] productionLength;
+
+    private final int[] defaultAction;
+    private final int[] actionBase;
+    private final int[] actionCheck;
+    private final int[] actionTable;
+    private final int[] defaultReduction;
+
+    private final int[] defaultGoto;
+    private final int[] gotoBase;
+    private final int[] gotoCheck;
+    private final int[] gotoTable;
+}
@@ -0,0 +1,240 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LR 分析表的二进制缓存
+ * <br>
+ * 每次启动都从 CSV 读入分析表需要切分字符串, 解析每个单元格的文本, 再按文本查找产生式.
+ * 此类把编号好但尚未压缩的 ACTION/GOTO 数组 (见 {@link CompiledLRTable.Dense}) 连同终结符, 非终结符与产生式的头部直接写进一个二进制文件,
+ * 下次启动时只需把文件整个映射进内存, 批量读出几个 int 数组即可.
+ * <br>
+ * 文件头中记录了 grammar.txt, coding_map.csv 与 CSV 分析表三者内容的 SHA-256, 任何一个发生变化,
+ * 或文件缺失/格式不符时, 都会退回到 {@link TableLoader} 读取 CSV, 并重新写出缓存.
+ * <br>
+ * 文件格式 (大端序):
+ * <pre>
+ * int   magic, version
+ * byte  hash[32]
+ * int   statusCount, terminalCount, nonTerminalCount, productionSlots
+ * (short 长度 + ASCII 字节) 终结符名 * terminalCount, 非终结符名 * nonTerminalCount
+ * int   productionHead[productionSlots]   不在表中出现的产生式为 -1
+ * int   action[statusCount * terminalCount]
+ * int   goto[statusCount * nonTerminalCount]
+ * </pre>
+ */
+public class TableCache {
+    /**
+     * 读取分析表, 缓存有效时直接使用缓存, 否则读取 CSV 并更新缓存
+     *
+     * @param csvPath   CSV 格式的分析表路径
+     * @param cachePath 缓存文件路径
+     * @return LRTable
+     */
+    public static LRTable load(String csvPath, String cachePath) {
+        final var hash = hashInputs(csvPath);
+
+        final var cached = read(cachePath, hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var table = new TableLoader().load(csvPath);
+        final var contents = CompiledLRTable.Contents.of(table);
+        final var dense = CompiledLRTable.Dense.encode(contents.statuses(), contents.terminals(), contents.nonTerminals());
+        // 写出缓存所用的未压缩表同时用来构造紧凑形式, 语法分析时不必再编码一遍
+        CompiledLRTable.remember(table, new CompiledLRTable(contents.statuses().toArray(new Status[0]), contents.terminals(), dense));
+        write(cachePath, hash, contents, dense);
+        return table;
+    }
+
+    private static final int MAGIC = 0x4C525442; // "LRTB"
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
+    private TableCache() {
+    }
+
+    /**
+     * 计算分析表所依赖的所有输入文件的摘要
+     */
+    private static byte[] hashInputs(String csvPath) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            for (final var path : List.of(FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH, csvPath)) {
+                final var content = Files.readAllBytes(Paths.get(path));
+                // 先写入长度, 避免不同文件内容拼接后碰巧相同
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(content.length).array());
+                digest.update(content);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception while hashing table inputs", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * 尝试读取缓存
+     *
+     * @return 缓存缺失, 过期或损坏时返回 null
+     */
+    private static LRTable read(String cachePath, byte[] hash) {
+        final var path = Paths.get(cachePath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 2 * Integer.BYTES + HASH_LENGTH
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            final var storedHash = new byte[HASH_LENGTH];
+            buffer.get(storedHash);
+            if (!Arrays.equals(storedHash, hash)) {
+                return null;
+            }
+
+            return decode(buffer);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            // 文件被截断或内容错乱时与缓存过期同样处理, 退回 CSV. 其他异常 (如与 grammar.txt 不符) 是程序的错误, 照常抛出
+            return null;
+        }
+    }
+
+    private static LRTable decode(ByteBuffer buffer) {
+        final var statusCount = buffer.getInt();
+        final var terminalCount = buffer.getInt();
+        final var nonTerminalCount = buffer.getInt();
+        final var productionSlots = buffer.getInt();
+
+        final var terminals = new ArrayList<TokenKind>(terminalCount);
+        for (int idx = 0; idx < terminalCount; idx++) {
+            terminals.add(TokenKind.fromString(readName(buffer)));
+        }
+        final var nonTerminals = new ArrayList<NonTerminal>(nonTerminalCount);
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            nonTerminals.add(new NonTerminal(readName(buffer)));
+        }
+
+        final var dense = new CompiledLRTable.Dense(statusCount, terminalCount, nonTerminalCount, productionSlots);
+        final var productionHead = dense.productionHead;
+        final var action = dense.action;
+        final var goto_ = dense.goto_;
+        buffer.asIntBuffer().get(productionHead).get(action).get(goto_);
+
+        // 产生式的 index 即其在 grammar.txt 中的行号
+        final var grammar = GrammarInfo.getProductionsInOrder();
+        final var productions = dense.productions;
+        for (int idx = 0; idx < productionSlots; idx++) {
+            if (productionHead[idx] >= 0) {
+                productions[idx] = grammar.get(idx - 1);
+            }
+        }
+
+        // 观察者仍需要 Status 对象, 按与 TableLoader 相同的方式重建
+        final var statuses = new Status[statusCount];
+        for (int idx = 0; idx < statusCount; idx++) {
+            statuses[idx] = Status.create(idx);
+        }
+        for (final var status : statuses) {
+            for (int idx = 0; idx < terminalCount; idx++) {
+                final var encoded = action[status.index() * terminalCount + idx];
+                final var payload = CompiledLRTable.payloadOf(encoded);
+                status.setAction(terminals.get(idx), switch (CompiledLRTable.kindOf(encoded)) {
+                    case CompiledLRTable.SHIFT -> Action.shift(statuses[payload]);
+                    case CompiledLRTable.REDUCE -> Action.reduce(productions[payload]);
+                    case CompiledLRTable.ACCEPT -> Action.accept();
+                    default -> Action.error();
+                });
+            }
+
+            for (int idx = 0; idx < nonTerminalCount; idx++) {
+                final var target = goto_[status.index() * nonTerminalCount + idx];
+                status.setGoto(nonTerminals.get(idx), target < 0 ? Status.error() : statuses[target]);
+            }
+        }
+
+        final var table = new LRTable(List.of(statuses), terminals, nonTerminals);
+        CompiledLRTable.remember(table, new CompiledLRTable(statuses, terminals, dense));
+        return table;
+    }
+
+    /**
+     * 写出缓存. 缓存只是一种优化, 写不出 (如目录只读) 时放弃, 下次启动仍从 CSV 读取
+     */
+    private static void write(String cachePath, byte[] hash, CompiledLRTable.Contents contents, CompiledLRTable.Dense dense) {
+        final var terminals = contents.terminals();
+        final var nonTerminals = contents.nonTerminals();
+        final var statusCount = dense.statusCount;
+        final var productions = dense.productions;
+        final var action = dense.action;
+        final var goto_ = dense.goto_;
+
+        final var names = new ArrayList<byte[]>();
+        terminals.forEach(terminal -> names.add(terminal.getTermName().getBytes(StandardCharsets.US_ASCII)));
+        nonTerminals.forEach(nonTerminal -> names.add(nonTerminal.getTermName().getBytes(StandardCharsets.US_ASCII)));
+
+        final var size = 6 * Integer.BYTES + HASH_LENGTH
+            + names.stream().mapToInt(name -> Short.BYTES + name.length).sum()
+            + (productions.length + action.length + goto_.length) * Integer.BYTES;
+        final var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash);
+        buffer.putInt(statusCount).putInt(terminals.size()).putInt(nonTerminals.size()).putInt(productions.length);
+        for (final var name : names) {
+            buffer.putShort((short) name.length).put(name);
+        }
+
+        final var heads = dense.productionHead;
+        for (int idx = 0; idx < productions.length; idx++) {
+            buffer.putInt(productions[idx] == null ? -1 : heads[idx]);
+        }
+        for (final var entry : action) {
+            buffer.putInt(entry);
+        }
+        for (final var entry : goto_) {
+            buffer.putInt(entry);
+        }
+
+        // 先写临时文件再替换, 避免其他进程读到写了一半的缓存
+        final var path = Paths.get(cachePath);
+        final var temp = Paths.get(cachePath + ".tmp");
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Files.write(temp, buffer.array());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 临时文件也删不掉时只能留给下次写出时覆盖
+            }
+        }
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        final var bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -3,17 +3,61 @@ package cn.edu.hitsz.compiler.parser.table;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.io.Serial;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除默认的 SLR(1) 外, 还可以在构造时选择规范 LR(1) 或 LALR(1), 见 {@link Mode}; 项目集族也可以用多个线程并行构造.
  */
 public class TableGenerator {
+    /**
+     * 分析表的种类
+     */
+    public enum Mode {
+        /**
+         * 在 LR(0) 项目集族上以 FOLLOW 集决定规约
+         */
+        SLR,
+        /**
+         * 构造带展望符的 LR(1) 项目集族, 以项目的展望符决定规约. 状态数可能远多于另外两种
+         */
+        LR1,
+        /**
+         * 在 LR(0) 项目集族上以 DeRemer-Pennello 方法计算各规约项目的展望符, 状态数与 SLR(1) 相同
+         */
+        LALR
+    }
+
     public TableGenerator() {
+        this(Mode.SLR);
+    }
+
+    /**
+     * @param mode 要构造的分析表的种类
+     */
+    public TableGenerator(Mode mode) {
+        this(mode, 1);
+    }
+
+    /**
+     * @param mode        要构造的分析表的种类
+     * @param parallelism 构造项目集族时使用的线程数, 为 1 时在当前线程中顺序构造. 无论取何值, 构造出的分析表都完全相同
+     */
+    public TableGenerator(Mode mode, int parallelism) {
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism of table generator must be positive");
+        }
+
+        this.mode = mode;
+        this.parallelism = parallelism;
         this.productions = GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
@@ -27,23 +71,43 @@ public class TableGenerator {
      * 主体方法
      */
     public void run() {
+        indexGrammar();
+        calcNullable();
         calcFirst();
         calcFollow();
+        calcSuffixes();
         constructDFA();
+        if (mode == Mode.LALR) {
+            calcLALRLookaheads();
+        }
         dumpItems();
         genTable();
     }
 
     /**
-     * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * 将该分析表生成的规范项目集族打印到某个文件之中, 用于调试
+     * <br>
+     * LR(1) 项目以及 LALR(1) 规约项目的展望符写在项目之后, 以逗号分隔, 多个展望符之间以 / 分隔
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
-        for (final var status : allStatusInIndexOrder) {
-            lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+        for (int idx = 0; idx < itemSets.size(); idx++) {
+            final var itemSet = itemSets.get(idx);
+            lines.add("%d: ".formatted(idx));
+            // LR(1) 模式下同一 LR(0) 项目的各个展望符合并为一行
+            final var lookaheads = new LinkedHashMap<Integer, List<String>>();
+            for (final var item : itemSet.items) {
+                final var core = item / lookaheadCount;
+                final var list = lookaheads.computeIfAbsent(core, key -> new ArrayList<>());
+                if (mode == Mode.LR1) {
+                    list.add(terminalOf(item % lookaheadCount).toString());
+                } else if (mode == Mode.LALR && itemDot[core] == bodies[itemProduction[core]].length && itemProduction[core] != 0) {
+                    terminalsIn(itemSet.lookaheads.get(itemProduction[core])).forEach(t -> list.add(terminalOf(t).toString()));
+                }
             }
+
+            lookaheads.forEach((core, list) -> lines.add(
+                "    " + new Item(productions.get(itemProduction[core]), itemDot[core], String.join("/", list))));
         }
 
         FileUtils.writeLines("data/out/items.txt", lines);
@@ -56,355 +120,797 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Mode mode;
+    private final int parallelism;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    /**
+     * 表示一个项目, 仅用于输出项目集
+     * <br>
+     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
+     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     *
+     * @param production 产生式
+     * @param dot        目前解析到的位置
+     * @param lookaheads 展望符, 没有时为空串
+     */
+    private record Item(Production production, int dot, String lookaheads) {
+        @Override
+        public String toString() {
+            final var builder = new StringBuilder();
+
+            builder.append(production.head());
+            builder.append(" -> ");
+
+            final var body = production.body();
+            for (int i = 0; i < body.size(); i++) {
+                if (i == dot) {
+                    builder.append(" .");
+                }
+                builder.append(" ").append(body.get(i));
+            }
+
+            if (dot == body.size()) {
+                builder.append(" .");
+            }
+
+            if (!lookaheads.isEmpty()) {
+                builder.append(", ").append(lookaheads);
+            }
+
+            return builder.toString();
+        }
+    }
+
+    //==================== 文法与项目的稠密编号 ==============================//
+    // 构造规范项目集族时, 文法符号, 产生式与项目都只以 int 编号表示:
+    // - 文法符号按 terms 中的位置编号, 非终结符在前, 因此编号小于 nonTerminalCount 的即为非终结符;
+    //   终结符 terms[nonTerminalCount + t] 的终结符编号为 t
+    // - 产生式按其在 productions 中的位置编号
+    // - LR(0) 项目 (产生式 p, 点的位置 dot) 的编号为 itemBase[p] + dot, 其后继项目的编号即为该编号 + 1
+    // - 项目集中的项目编号为 LR(0) 项目编号 * lookaheadCount + 展望符的终结符编号.
+    //   只有 LR(1) 模式下 lookaheadCount 才是终结符的个数, 其余模式下为 1, 即项目编号就是 LR(0) 项目编号
+
+    private final List<Term> terms = new ArrayList<>();
+    private final Map<Term, Integer> termIds = new HashMap<>();
+    private int nonTerminalCount;
+    private int lookaheadCount;
+    private int[] heads;
+    private int[][] bodies;
+    private int[][] productionsByHead;
+    private int[] itemBase;
+    private int[] itemProduction;
+    private int[] itemDot;
+
+    /**
+     * 为文法符号, 产生式与项目编号, 并按头部对产生式建立索引
+     */
+    private void indexGrammar() {
+        terms.addAll(nonTerminals);
+        terms.addAll(terminals);
+        nonTerminalCount = nonTerminals.size();
+        lookaheadCount = mode == Mode.LR1 ? terminals.size() : 1;
+
+        for (int idx = 0; idx < terms.size(); idx++) {
+            termIds.put(terms.get(idx), idx);
+        }
+
+        heads = new int[productions.size()];
+        bodies = new int[productions.size()][];
+        itemBase = new int[productions.size()];
+        final var byHead = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            byHead.add(new ArrayList<>());
+        }
+
+        var itemCount = 0;
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            heads[p] = termIds.get(production.head());
+            bodies[p] = production.body().stream().mapToInt(termIds::get).toArray();
+            byHead.get(heads[p]).add(p);
+            itemBase[p] = itemCount;
+            itemCount += bodies[p].length + 1;
+        }
+        productionsByHead = byHead.stream()
+            .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
+
+        itemProduction = new int[itemCount];
+        itemDot = new int[itemCount];
+        for (int p = 0; p < productions.size(); p++) {
+            for (int dot = 0; dot <= bodies[p].length; dot++) {
+                itemProduction[itemBase[p] + dot] = p;
+                itemDot[itemBase[p] + dot] = dot;
+            }
+        }
+    }
+
+    //==================== NULLABLE, FIRST 与 FOLLOW ==============================//
+    // 三者都建立在稠密编号上: nullable[X] 表示文法符号 X 能否推出空串, firstSets[X] 为 X 的 FIRST 集合,
+    // followSets[A] 为非终结符 A 的 FOLLOW 集合. 终结符集合都是 words 个 long 组成的位集, 第 t 位对应编号为 t 的终结符.
+    // 各集合都是对应方程组的最小不动点.
 
-    private final Set<Term> visited = new HashSet<>();
+    private int words;
+    private boolean[] nullable;
+    private long[][] firstSets;
+    private long[][] followSets;
+
+    /**
+     * 求出所有能推出空串的非终结符: 反复扫描所有产生式, 直到不再有新的非终结符被标记
+     */
+    private void calcNullable() {
+        nullable = new boolean[terms.size()];
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                if (!nullable[heads[p]] && Arrays.stream(bodies[p]).allMatch(symbol -> nullable[symbol])) {
+                    nullable[heads[p]] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 计算所有符号的 FIRST 集合 <br>
+     * 终结符的 FIRST 就是它自身. 对产生式 A -> X1 ... Xn, 若 X1 ... X(i-1) 都能推出空串, 则 FIRST(Xi) 属于 FIRST(A):
+     * Xi 为终结符时直接加入 FIRST(A), 为非终结符时记下关系 A -> Xi.
+     * FIRST 即初值沿该关系的闭包, 由 digraph 算法一次求出, 左递归造成的环恰好是其中的强连通分量.
      */
     private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+        words = (terminals.size() + 63) / 64;
+        firstSets = new long[terms.size()][words];
+        for (int t = 0; t < terminals.size(); t++) {
+            firstSets[nonTerminalCount + t][t >>> 6] |= 1L << t;
+        }
+
+        final var relation = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            relation.add(new ArrayList<>());
         }
+        for (int p = 0; p < productions.size(); p++) {
+            for (final var symbol : bodies[p]) {
+                if (symbol >= nonTerminalCount) {
+                    or(firstSets[heads[p]], firstSets[symbol]);
+                    break;
+                }
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+                relation.get(heads[p]).add(symbol);
+                if (!nullable[symbol]) {
+                    break;
+                }
+            }
         }
 
+        // 非终结符的行在前, 截取出的数组与 firstSets 共用各行
+        digraph(relation, Arrays.copyOf(firstSets, nonTerminalCount));
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
+     * 计算所有非终结符的 FOLLOW 集合 <br>
+     * 起始符号的 FOLLOW 包含 EOF. 对产生式 A -> alpha B beta, FIRST(beta) 属于 FOLLOW(B);
+     * 若 beta 能推出空串, 则 FOLLOW(A) 也属于 FOLLOW(B), 记下关系 B -> A, 同样由 digraph 算法求闭包.
      */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+    private void calcFollow() {
+        followSets = new long[nonTerminalCount][words];
+        final var eof = termIds.get(TokenKind.eof()) - nonTerminalCount;
+        followSets[heads[0]][eof >>> 6] |= 1L << eof;
+
+        final var relation = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            relation.add(new ArrayList<>());
+        }
+
+        // 从产生式末尾往前扫描, rest 为当前位置之后的符号串的 FIRST, restNullable 为其能否推出空串
+        final var rest = new long[words];
+        for (int p = 0; p < productions.size(); p++) {
+            Arrays.fill(rest, 0);
+            var restNullable = true;
+
+            for (int dot = bodies[p].length - 1; dot >= 0; dot--) {
+                final var symbol = bodies[p][dot];
+                if (symbol < nonTerminalCount) {
+                    or(followSets[symbol], rest);
+                    if (restNullable) {
+                        relation.get(symbol).add(heads[p]);
+                    }
+                }
+
+                if (!nullable[symbol]) {
+                    System.arraycopy(firstSets[symbol], 0, rest, 0, words);
+                    restNullable = false;
+                } else {
+                    or(rest, firstSets[symbol]);
                 }
             }
         }
 
-        first.put(nonTerminal, result);
+        digraph(relation, followSets);
+    }
+
+    // LR(0) 项目的点之后 (含点后的符号) 的符号串能否推出空串, 以及其 FIRST 集合 (只在 LR(1) 模式下计算)
+    private boolean[] suffixNullable;
+    private int[][] suffixFirst;
+
+    /**
+     * 从产生式末尾往前求出各个项目之后的符号串的性质, 供求闭包与 LALR(1) 展望符时使用
+     */
+    private void calcSuffixes() {
+        suffixNullable = new boolean[itemProduction.length];
+        suffixFirst = new int[itemProduction.length][];
+        final var rest = new long[words];
+        for (int p = 0; p < productions.size(); p++) {
+            Arrays.fill(rest, 0);
+            suffixNullable[itemBase[p] + bodies[p].length] = true;
+            suffixFirst[itemBase[p] + bodies[p].length] = new int[0];
+
+            for (int dot = bodies[p].length - 1; dot >= 0; dot--) {
+                final var symbol = bodies[p][dot];
+                final var item = itemBase[p] + dot;
+                suffixNullable[item] = nullable[symbol] && suffixNullable[item + 1];
+                if (mode == Mode.LR1) {
+                    if (nullable[symbol]) {
+                        or(rest, firstSets[symbol]);
+                    } else {
+                        System.arraycopy(firstSets[symbol], 0, rest, 0, words);
+                    }
+                    suffixFirst[item] = terminalsIn(rest).stream().mapToInt(Integer::intValue).toArray();
+                }
+            }
+        }
+    }
+
+    /**
+     * 将 rhs 并入 lhs
+     */
+    private static void or(long[] lhs, long[] rhs) {
+        for (int i = 0; i < rhs.length; i++) {
+            lhs[i] |= rhs[i];
+        }
+    }
+
+    /**
+     * @return 位集中的所有终结符编号, 升序排列
+     */
+    private static List<Integer> terminalsIn(long[] bits) {
+        final var result = new ArrayList<Integer>();
+        for (int word = 0; word < bits.length; word++) {
+            for (var rest = bits[word]; rest != 0; rest &= rest - 1) {
+                result.add(word * 64 + Long.numberOfTrailingZeros(rest));
+            }
+        }
         return result;
     }
 
+    //==================== 规范项目集族 ==============================//
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 项目集的核, 即其中的项目编号升序排列. 两个项目集相同当且仅当它们的核相同, 因此以核作为项目集的唯一标识.
      */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+    private static final class Kernel {
+        Kernel(int[] items) {
+            this.items = items;
+            this.hash = Arrays.hashCode(items);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel
+                && kernel.hash == hash
+                && Arrays.equals(kernel.items, items);
         }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private final int[] items;
+        private final int hash;
     }
 
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 一个项目集, 即 DFA 的一个状态
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
+    private static final class ItemSet {
+        ItemSet(Kernel kernel) {
+            this.kernel = kernel;
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
+        private final Kernel kernel;
+        // 闭包中的所有项目, 核中的项目在前
+        private int[] items;
+        // 该项目集的所有转移: 在 symbols[i] 上转移到项目集 next[i], 按符号编号升序排列
+        private int[] symbols;
+        private ItemSet[] next;
+        // 项目集的编号与各转移目标的编号, 在整个项目集族构造完成后统一确定
+        private int index = -1;
+        private int[] targets;
+        // LALR(1) 模式下该项目集中各规约项目的展望符集合, 以产生式编号为键
+        private final Map<Integer, long[]> lookaheads = new HashMap<>();
+
+        /**
+         * @return 在符号上转移到的项目集编号, 没有该转移时为 -1
+         */
+        int targetOf(int symbol) {
+            final var idx = Arrays.binarySearch(symbols, symbol);
+            return idx < 0 ? -1 : targets[idx];
+        }
+    }
+
+    private final List<ItemSet> itemSets = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
+    /**
+     * 构造出所有状态并维护状态与项集之间的对应关系
+     */
+    private void constructDFA() {
+        // 起始项目 S -> . S', 在 LR(1) 模式下其展望符为 EOF
+        final var eof = termIds.get(TokenKind.eof()) - nonTerminalCount;
+        constructCanonicalLRCollection(itemBase[0] * lookaheadCount + (mode == Mode.LR1 ? eof : 0));
 
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+        for (int idx = 0; idx < itemSets.size(); idx++) {
+            allStatusInIndexOrder.add(Status.create(idx));
+        }
+    }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+    /**
+     * 构造规范项目集族, 同时记录所有转移
+     * <br>
+     * 顺序构造时在当前线程中以 BFS 形式搜索. 并行构造时逐层搜索: 同一层的项目集互不相关, 交给 ForkJoinPool 同时展开,
+     * 新发现的项目集通过 ConcurrentHashMap 按核去重, 构成下一层. 两种方式最后都由 {@link #numberItemSets} 统一编号.
+     *
+     * @param initItem 起始项目 S -> . S' 的编号
+     */
+    private void constructCanonicalLRCollection(int initItem) {
+        final var initial = new ItemSet(new Kernel(new int[]{initItem}));
+
+        if (parallelism == 1) {
+            final var expander = new Expander();
+            final var itemSetByKernel = new HashMap<Kernel, ItemSet>();
+            itemSetByKernel.put(initial.kernel, initial);
+
+            final var unexpanded = new ArrayDeque<ItemSet>();
+            unexpanded.add(initial);
+            while (!unexpanded.isEmpty()) {
+                expander.expand(unexpanded.pollFirst(), itemSetByKernel, unexpanded);
+            }
+        } else {
+            final var itemSetByKernel = new ConcurrentHashMap<Kernel, ItemSet>();
+            itemSetByKernel.put(initial.kernel, initial);
+            // 求闭包用的缓冲区每个线程各持有一份
+            final var expanders = ThreadLocal.withInitial(Expander::new);
+
+            final var pool = new ForkJoinPool(parallelism);
+            try {
+                var layer = List.of(initial);
+                while (!layer.isEmpty()) {
+                    final var discovered = new ConcurrentLinkedQueue<ItemSet>();
+                    pool.invoke(new ExpandTask(layer, 0, layer.size(), itemSetByKernel, expanders, discovered));
+                    layer = new ArrayList<>(discovered);
                 }
+            } finally {
+                pool.shutdown();
             }
+        }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
+        numberItemSets(initial);
+    }
+
+    /**
+     * 从起始项目集出发按 BFS 为所有项目集编号, 同一项目集的各个转移按符号编号的顺序访问.
+     * 这恰好是顺序构造时项目集被发现的顺序, 因此无论是否并行构造, 得到的编号 (进而整张分析表) 都完全相同.
+     *
+     * @param initial 起始项目集
+     */
+    private void numberItemSets(ItemSet initial) {
+        initial.index = 0;
+        itemSets.add(initial);
+
+        for (int idx = 0; idx < itemSets.size(); idx++) {
+            final var itemSet = itemSets.get(idx);
+            itemSet.targets = new int[itemSet.next.length];
+            for (int i = 0; i < itemSet.next.length; i++) {
+                final var target = itemSet.next[i];
+                if (target.index < 0) {
+                    target.index = itemSets.size();
+                    itemSets.add(target);
                 }
+                itemSet.targets[i] = target.index;
             }
+            itemSet.next = null;
         }
+    }
 
-        follow.put(nonTerminal, result);
-        return result;
+    /**
+     * 并行展开一层中 [from, to) 范围内的项目集, 范围较大时对半拆分
+     */
+    private static final class ExpandTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        ExpandTask(List<ItemSet> layer, int from, int to, Map<Kernel, ItemSet> itemSetByKernel,
+                   ThreadLocal<Expander> expanders, Collection<ItemSet> discovered) {
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+            this.itemSetByKernel = itemSetByKernel;
+            this.expanders = expanders;
+            this.discovered = discovered;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                expanders.get().expand(layer.get(from), itemSetByKernel, discovered);
+                return;
+            }
+
+            final var middle = (from + to) >>> 1;
+            invokeAll(
+                new ExpandTask(layer, from, middle, itemSetByKernel, expanders, discovered),
+                new ExpandTask(layer, middle, to, itemSetByKernel, expanders, discovered));
+        }
+
+        private final List<ItemSet> layer;
+        private final int from;
+        private final int to;
+        private final Map<Kernel, ItemSet> itemSetByKernel;
+        private final ThreadLocal<Expander> expanders;
+        private final Collection<ItemSet> discovered;
     }
 
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
-     *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * 求闭包与转移的过程, 持有复用的缓冲区, 因此不能在多个线程间共享
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
+    private final class Expander {
+        Expander() {
+            this.closureBuffer = new int[itemProduction.length * lookaheadCount];
+            this.itemMark = new int[itemProduction.length * lookaheadCount];
+            this.buckets = new int[terms.size()][4];
+            this.bucketSizes = new int[terms.size()];
+            this.symbols = new int[terms.size()];
         }
 
         /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
+         * 构造项目集的闭包, 然后一次求出其在所有文法符号上的转移, 相当于对每个文法符号 X 调用理论课中的 GO(I, X) 函数
+         *
+         * @param itemSet         核已知的项目集
+         * @param itemSetByKernel 所有已发现的项目集, 以核为键, 在其中查找或加入后继项目集
+         * @param discovered      新加入的后继项目集会被追加到这里
          */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
+        void expand(ItemSet itemSet, Map<Kernel, ItemSet> itemSetByKernel, Collection<ItemSet> discovered) {
+            itemSet.items = constructClosure(itemSet.kernel.items);
+
+            // 按点后面的符号把后继项目分桶, 每个非空的桶就是一个后继项目集的核
+            var symbolCount = 0;
+            for (final var item : itemSet.items) {
+                final var core = item / lookaheadCount;
+                final var body = bodies[itemProduction[core]];
+                final var dot = itemDot[core];
+                if (dot == body.length) {
+                    continue;
+                }
+
+                final var symbol = body[dot];
+                if (bucketSizes[symbol] == 0) {
+                    symbols[symbolCount++] = symbol;
+                }
+                if (bucketSizes[symbol] == buckets[symbol].length) {
+                    buckets[symbol] = Arrays.copyOf(buckets[symbol], bucketSizes[symbol] * 2);
+                }
+                // 后继项目的 LR(0) 项目编号加一, 展望符不变
+                buckets[symbol][bucketSizes[symbol]++] = item + lookaheadCount;
+            }
+
+            // 按符号编号的顺序处理各个桶, 使后继项目集被发现的顺序与逐个符号求 GO(I, X) 时相同
+            Arrays.sort(symbols, 0, symbolCount);
+            itemSet.symbols = Arrays.copyOf(symbols, symbolCount);
+            itemSet.next = new ItemSet[symbolCount];
+            for (int idx = 0; idx < symbolCount; idx++) {
+                final var symbol = symbols[idx];
+                final var kernel = Arrays.copyOf(buckets[symbol], bucketSizes[symbol]);
+                Arrays.sort(kernel);
+                bucketSizes[symbol] = 0;
+
+                final var candidate = new ItemSet(new Kernel(kernel));
+                final var existing = itemSetByKernel.putIfAbsent(candidate.kernel, candidate);
+                if (existing == null) {
+                    discovered.add(candidate);
+                }
+                itemSet.next[idx] = existing == null ? candidate : existing;
             }
         }
 
         /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
+         * 构造核的闭包, 相当于理论课中的 CLOSURE(I) 函数
+         *
+         * @param kernel 核
+         * @return 闭包中的所有项目, 核中的项目在前
          */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
+        private int[] constructClosure(int[] kernel) {
+            // 采用 BFS 的方法, closureBuffer 中 [0, closureSize) 为已找到的项目, [expanded, closureSize) 为还未展开的项目
+            markStamp++;
+            closureSize = 0;
+            for (final var item : kernel) {
+                addToClosure(item);
             }
-        }
-
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
 
-            builder.append(production.head());
-            builder.append(" -> ");
+            for (int expanded = 0; expanded < closureSize; expanded++) {
+                final var item = closureBuffer[expanded];
+                final var core = item / lookaheadCount;
+                final var body = bodies[itemProduction[core]];
+                final var dot = itemDot[core];
+
+                // 点后面是非终结符 B 时, 加入以 B 为头的产生式的初始项目
+                if (dot < body.length && body[dot] < nonTerminalCount) {
+                    final var expanding = productionsByHead[body[dot]];
+                    if (mode != Mode.LR1) {
+                        for (final var production : expanding) {
+                            addToClosure(itemBase[production]);
+                        }
+                        continue;
+                    }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+                    // 对于 LR(1) 项目 [A -> alpha . B beta, a], 新项目的展望符为 FIRST(beta a) 中的每个终结符
+                    for (final var lookahead : suffixFirst[core + 1]) {
+                        for (final var production : expanding) {
+                            addToClosure(itemBase[production] * lookaheadCount + lookahead);
+                        }
+                    }
+                    if (suffixNullable[core + 1]) {
+                        for (final var production : expanding) {
+                            addToClosure(itemBase[production] * lookaheadCount + item % lookaheadCount);
+                        }
+                    }
                 }
-                builder.append(" ").append(body.get(i));
             }
 
-            if (dot == body.size()) {
-                builder.append(" .");
-            }
+            return Arrays.copyOf(closureBuffer, closureSize);
+        }
 
-            return builder.toString();
+        private void addToClosure(int item) {
+            if (itemMark[item] != markStamp) {
+                itemMark[item] = markStamp;
+                closureBuffer[closureSize++] = item;
+            }
         }
+
+        private final int[] closureBuffer;
+        private int closureSize;
+        private final int[] itemMark;
+        private int markStamp = 0;
+        private final int[][] buckets;
+        private final int[] bucketSizes;
+        private final int[] symbols;
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    //==================== LALR(1) 展望符 ==============================//
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 以 DeRemer-Pennello 方法在 LR(0) 项目集族上计算各规约项目的展望符, 不需要先构造 LR(1) 项目集族.
+     * <br>
+     * 对每个非终结符上的转移 (p, A), 即 GO(p, A) = r:
+     * <ul>
+     *     <li>DR(p, A): r 上可以直接移入的终结符</li>
+     *     <li>(p, A) reads (r, C): C 可推出空串, 此时 (r, C) 的 Read 集也属于 (p, A)</li>
+     *     <li>(p, A) includes (p', B): 有 B -> beta A gamma, gamma 可推出空串, 且 p' 经 beta 到达 p.
+     *     此时 (p', B) 的 Follow 集也属于 (p, A)</li>
+     *     <li>(q, A -> omega) lookback (p, A): p 经 omega 到达 q</li>
+     * </ul>
+     * 于是 Read = DR 沿 reads 闭包, Follow = Read 沿 includes 闭包, 规约项目的展望符即其 lookback 的所有转移的 Follow 之并.
+     * 两次闭包都用 digraph 算法 (在强连通分量上求并) 完成, 每个集合只需合并线性次.
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private void calcLALRLookaheads() {
+        final var eof = termIds.get(TokenKind.eof()) - nonTerminalCount;
+
+        // 为所有非终结符上的转移编号. 非终结符的编号都小于终结符, 因此每个项目集的转移中非终结符上的转移都排在最前面,
+        // 状态 p 在非终结符 A 上的转移的编号即为 transitionBase[p] + A 在 p 的转移中的位置
+        transitionBase = new int[itemSets.size()];
+        final var fromStates = new ArrayList<Integer>();
+        final var symbols = new ArrayList<Integer>();
+        for (int state = 0; state < itemSets.size(); state++) {
+            transitionBase[state] = fromStates.size();
+            for (final var symbol : itemSets.get(state).symbols) {
+                if (symbol < nonTerminalCount) {
+                    fromStates.add(state);
+                    symbols.add(symbol);
+                }
+            }
+        }
+
+        // 起始状态上起始符号的转移一般是虚拟的, 其后只能是 EOF
+        var start = transitionOf(0, heads[0]);
+        if (start < 0) {
+            start = fromStates.size();
+            fromStates.add(0);
+            symbols.add(heads[0]);
+        }
+        final var transitionCount = fromStates.size();
+
+        // DR 与 reads
+        final var sets = new long[transitionCount][words];
+        final var reads = new ArrayList<List<Integer>>();
+        for (int x = 0; x < transitionCount; x++) {
+            reads.add(new ArrayList<>());
+            final var target = itemSets.get(fromStates.get(x)).targetOf(symbols.get(x));
+            if (target < 0) {
+                continue;
+            }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+            for (final var symbol : itemSets.get(target).symbols) {
+                if (symbol >= nonTerminalCount) {
+                    final var t = symbol - nonTerminalCount;
+                    sets[x][t >>> 6] |= 1L << t;
+                } else if (nullable[symbol]) {
+                    reads.get(x).add(transitionOf(target, symbol));
+                }
+            }
+        }
+        sets[start][eof >>> 6] |= 1L << eof;
+        digraph(reads, sets);
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        // includes 与 lookback: 沿每个转移 (p', B) 的每条产生式 B -> X1 ... Xn 走一遍
+        final var includes = new ArrayList<List<Integer>>();
+        for (int x = 0; x < transitionCount; x++) {
+            includes.add(new ArrayList<>());
+        }
+        final var lookbacks = new HashMap<Long, List<Integer>>();
+        for (int x = 0; x < transitionCount; x++) {
+            for (final var production : productionsByHead[symbols.get(x)]) {
+                final var body = bodies[production];
+                var state = fromStates.get(x);
+                for (int dot = 0; dot < body.length; dot++) {
+                    if (body[dot] < nonTerminalCount && suffixNullable[itemBase[production] + dot + 1]) {
+                        includes.get(transitionOf(state, body[dot])).add(x);
+                    }
+                    state = itemSets.get(state).targetOf(body[dot]);
+                }
+                lookbacks.computeIfAbsent((long) state * productions.size() + production, key -> new ArrayList<>()).add(x);
+            }
         }
+        digraph(includes, sets);
+
+        lookbacks.forEach((key, transitions) -> {
+            final var lookahead = new long[words];
+            for (final var x : transitions) {
+                or(lookahead, sets[x]);
+            }
+            itemSets.get((int) (key / productions.size())).lookaheads.put((int) (key % productions.size()), lookahead);
+        });
     }
 
+    private int[] transitionBase;
+
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * @return 状态在非终结符上的转移的编号, 没有该转移时为 -1
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private int transitionOf(int state, int nonTerminal) {
+        final var idx = Arrays.binarySearch(itemSets.get(state).symbols, nonTerminal);
+        return idx < 0 ? -1 : transitionBase[state] + idx;
     }
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     * DeRemer 与 Pennello 的 digraph 算法: 对关系 R 求 F(x) = F'(x) ∪ ∪{F(y) | x R y}
      *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * @param relation 各元素的后继
+     * @param sets     输入时为 F', 输出时为 F
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+    private static void digraph(List<List<Integer>> relation, long[][] sets) {
+        final var depth = new int[sets.length];
+        final var stack = new ArrayDeque<Integer>();
+        for (int x = 0; x < sets.length; x++) {
+            if (depth[x] == 0) {
+                traverse(x, relation, sets, depth, stack);
+            }
         }
-
-        return result;
     }
 
-    /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
-     */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
-    }
+    private static void traverse(int x, List<List<Integer>> relation, long[][] sets, int[] depth, Deque<Integer> stack) {
+        stack.push(x);
+        final var d = stack.size();
+        depth[x] = d;
 
-    /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
-     */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
+        for (final var y : relation.get(x)) {
+            if (depth[y] == 0) {
+                traverse(y, relation, sets, depth, stack);
+            }
+            depth[x] = Math.min(depth[x], depth[y]);
+            or(sets[x], sets[y]);
+        }
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+        // x 是强连通分量的根, 分量中所有元素的集合都与 x 相同
+        if (depth[x] == d) {
+            while (true) {
+                final var top = stack.pop();
+                depth[top] = Integer.MAX_VALUE;
+                if (top == x) {
+                    break;
                 }
+                System.arraycopy(sets[x], 0, sets[top], 0, sets[x].length);
             }
         }
-
-        return new ArrayList<>(result);
     }
 
+    //==================== 分析表 ==============================//
+
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
-        // 依索引顺序对每个状态的每个项目
-        for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
+        // 依索引顺序对每个状态
+        for (int idx = 0; idx < itemSets.size(); idx++) {
+            final var status = allStatusInIndexOrder.get(idx);
+            final var itemSet = itemSets.get(idx);
+
+            // 点在末尾的项目决定规约与接受动作
+            for (final var item : itemSet.items) {
+                final var core = item / lookaheadCount;
+                if (itemDot[core] != bodies[itemProduction[core]].length) {
+                    continue;
+                }
+
+                final var production = productions.get(itemProduction[core]);
+                if (itemProduction[core] == 0) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
+                    continue;
+                }
+
+                // A -> alpha .
+                // 如果项目代表某个产生式的末尾, 那么再遇到对于任何可以跟在其后的终结符都应该规约 A
+                switch (mode) {
+                    // SLR(1): 即 follow(A) 中的终结符
+                    case SLR -> {
+                        for (final var a : terminalsIn(followSets[heads[itemProduction[core]]])) {
+                            status.setAction(terminalOf(a), Action.reduce(production));
+                        }
+                    }
+                    // LR(1): 即该项目的展望符
+                    case LR1 -> status.setAction(terminalOf(item % lookaheadCount), Action.reduce(production));
+                    // LALR(1): 即计算出的展望符集合
+                    case LALR -> {
+                        for (final var a : terminalsIn(itemSet.lookaheads.get(itemProduction[core]))) {
+                            status.setAction(terminalOf(a), Action.reduce(production));
                         }
                     }
+                }
+            }
 
+            // 点后面有符号的项目已经在构造项目集族时求出了转移, 直接使用
+            for (int i = 0; i < itemSet.symbols.length; i++) {
+                final var symbol = terms.get(itemSet.symbols[i]);
+                final var next = allStatusInIndexOrder.get(itemSet.targets[i]);
+
+                if (symbol instanceof TokenKind tokenKind) {
+                    // A -> alpha . a beta
+                    // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
+                    status.setAction(tokenKind, Action.shift(next));
+                } else if (symbol instanceof NonTerminal nonTerminal) {
+                    // A -> alpha . B beta
+                    // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
+                    // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
+                    status.setGoto(nonTerminal, next);
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
-                    }
+                    throw new RuntimeException("Unknown type of Term");
                 }
             }
         }
     }
 
+    /**
+     * @param terminal 终结符编号
+     * @return 对应的终结符
+     */
+    private TokenKind terminalOf(int terminal) {
+        return (TokenKind) terms.get(nonTerminalCount + terminal);
+    }
+
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
 }
@@ -12,7 +12,10 @@ import java.util.*;
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
  */
 public class SymbolTable {
-    List<SymbolTableEntry> entries = new ArrayList<>();
+    /**
+     * 以符号文本为键的条目索引, 保持插入顺序
+     */
+    Map<String, SymbolTableEntry> entries = new LinkedHashMap<>();
 
     /**
      * 获取符号表中已有的条目
@@ -23,13 +26,11 @@ public class SymbolTable {
      */
     public SymbolTableEntry get(String text) {
         // TODO
-        if (!has(text)) {
+        final var entry = entries.get(text);
+        if (entry == null) {
             throw new RuntimeException("该符号在表中不存在: " + text);
         }
-        return entries.stream()
-                .filter(entry -> entry.getText().equals(text))
-                .toList()
-                .get(0);
+        return entry;
     }
 
     /**
@@ -41,14 +42,23 @@ public class SymbolTable {
      */
     public SymbolTableEntry add(String text) {
         // TODO
-        if (has(text)) {
+        final var entry = new SymbolTableEntry(text);
+        if (entries.putIfAbsent(text, entry) != null) {
             throw new RuntimeException("该符号已在表中存在: " + text);
         }
-        var entry = new SymbolTableEntry(text);
-        entries.add(entry);
         return entry;
     }
 
+    /**
+     * 获取符号表中的条目, 若不存在则新增之. 只进行一次查找, 供词法分析时登记标识符使用
+     *
+     * @param text 符号的文本表示
+     * @return 该符号在符号表中的条目
+     */
+    public SymbolTableEntry getOrAdd(String text) {
+        return entries.computeIfAbsent(text, SymbolTableEntry::new);
+    }
+
     /**
      * 判断符号表中有无条目
      *
@@ -57,8 +67,7 @@ public class SymbolTable {
      */
     public boolean has(String text) {
         // TODO
-        return entries.stream()
-                .anyMatch(entry -> entry.getText().equals(text));
+        return entries.containsKey(text);
     }
 
     /**
@@ -68,9 +77,7 @@ public class SymbolTable {
      */
     private Map<String, SymbolTableEntry> getAllEntries() {
         // TODO
-        var map = new HashMap<String, SymbolTableEntry>();
-        entries.forEach(entry -> map.put(entry.getText(), entry));
-        return map;
+        return Collections.unmodifiableMap(entries);
     }
 
     /**
@@ -0,0 +1,170 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * 编译为结点序列的 IR, 供 {@link IREmulator.Engine#Closure} 使用
+ * <br>
+ * 在 {@link DecodedIR} 的基础上, 载入时按指令种类与各操作数是变量还是立即数, 为每条指令选定一种专门的结点 (如 {@link AddVarImm}),
+ * 立即数直接存放在结点中. 执行时只需依次调用各结点, 不再对指令种类做 switch, 也不再区分操作数的种类.
+ * 两个操作数都是立即数的运算在载入时就算出结果, 变为 {@link MovImm}.
+ * <br>
+ * 与 {@link CompiledIR} 相比载入很快, 不需要定义类, 也不依赖 JIT 编译生成的代码, 适合较短或只执行一次的程序.
+ * 返回值与 {@link CompiledIR} 一样存放在寄存器堆末尾额外的两个槽位中.
+ */
+final class ClosureIR {
+    static ClosureIR compile(DecodedIR decoded) {
+        final var returnFlag = decoded.registers.length;
+        final var nodes = new ArrayList<Node>(decoded.size);
+        for (int idx = 0; idx < decoded.size; idx++) {
+            final var result = decoded.results[idx];
+            final var lhs = decoded.lhs[idx];
+            final var rhs = decoded.rhs[idx];
+            final var lhsImm = decoded.constants[lhs];
+            final var rhsImm = decoded.constants[rhs];
+            final var lhsValue = decoded.registers[lhs];
+            final var rhsValue = decoded.registers[rhs];
+
+            nodes.add(switch (decoded.ops[idx]) {
+                case DecodedIR.MOV -> lhsImm ? new MovImm(result, lhsValue) : new MovVar(result, lhs);
+                case DecodedIR.ADD -> lhsImm && rhsImm ? new MovImm(result, lhsValue + rhsValue)
+                    : lhsImm ? new AddVarImm(result, rhs, lhsValue) // 加法可交换
+                    : rhsImm ? new AddVarImm(result, lhs, rhsValue)
+                    : new AddVarVar(result, lhs, rhs);
+                case DecodedIR.SUB -> lhsImm && rhsImm ? new MovImm(result, lhsValue - rhsValue)
+                    : lhsImm ? new SubImmVar(result, lhsValue, rhs)
+                    : rhsImm ? new AddVarImm(result, lhs, -rhsValue) // 补码运算下 x - c 与 x + (-c) 相同
+                    : new SubVarVar(result, lhs, rhs);
+                case DecodedIR.MUL -> lhsImm && rhsImm ? new MovImm(result, lhsValue * rhsValue)
+                    : lhsImm ? new MulVarImm(result, rhs, lhsValue)
+                    : rhsImm ? new MulVarImm(result, lhs, rhsValue)
+                    : new MulVarVar(result, lhs, rhs);
+                case DecodedIR.RET -> lhsImm ? new RetImm(returnFlag, lhsValue) : new RetVar(returnFlag, lhs);
+                case DecodedIR.RET_NONE -> new RetNone(returnFlag);
+                case DecodedIR.FAIL -> new Fail(decoded, idx);
+                default -> throw new RuntimeException("Unknown decoded instruction: " + decoded.ops[idx]);
+            });
+
+            if (decoded.ops[idx] == DecodedIR.FAIL) {
+                // 之后的指令不可能被执行
+                break;
+            }
+        }
+        return new ClosureIR(decoded.registers, nodes.toArray(Node[]::new));
+    }
+
+    Optional<Integer> execute() {
+        final var slots = initialRegisters.length;
+        final var registers = Arrays.copyOf(initialRegisters, slots + 2);
+        for (final var node : nodes) {
+            node.run(registers);
+        }
+        return registers[slots] != 0 ? Optional.of(registers[slots + 1]) : Optional.empty();
+    }
+
+    private ClosureIR(int[] initialRegisters, Node[] nodes) {
+        this.initialRegisters = initialRegisters;
+        this.nodes = nodes;
+    }
+
+    private final int[] initialRegisters;
+    private final Node[] nodes;
+
+    //============================== 结点 ==============================
+
+    @FunctionalInterface
+    private interface Node {
+        void run(int[] registers);
+    }
+
+    private record MovVar(int result, int from) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[from];
+        }
+    }
+
+    private record MovImm(int result, int value) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = value;
+        }
+    }
+
+    private record AddVarVar(int result, int lhs, int rhs) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[lhs] + registers[rhs];
+        }
+    }
+
+    private record AddVarImm(int result, int lhs, int value) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[lhs] + value;
+        }
+    }
+
+    private record SubVarVar(int result, int lhs, int rhs) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[lhs] - registers[rhs];
+        }
+    }
+
+    private record SubImmVar(int result, int value, int rhs) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = value - registers[rhs];
+        }
+    }
+
+    private record MulVarVar(int result, int lhs, int rhs) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[lhs] * registers[rhs];
+        }
+    }
+
+    private record MulVarImm(int result, int lhs, int value) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[result] = registers[lhs] * value;
+        }
+    }
+
+    /**
+     * @param returnFlag 记录是否有返回值的槽位, 其后一个槽位存放返回值
+     */
+    private record RetVar(int returnFlag, int value) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[returnFlag] = 1;
+            registers[returnFlag + 1] = registers[value];
+        }
+    }
+
+    private record RetImm(int returnFlag, int value) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[returnFlag] = 1;
+            registers[returnFlag + 1] = value;
+        }
+    }
+
+    private record RetNone(int returnFlag) implements Node {
+        @Override
+        public void run(int[] registers) {
+            registers[returnFlag] = 0;
+        }
+    }
+
+    private record Fail(DecodedIR decoded, int index) implements Node {
+        @Override
+        public void run(int[] registers) {
+            throw decoded.failure(index);
+        }
+    }
+}
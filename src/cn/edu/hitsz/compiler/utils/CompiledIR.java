@@ -0,0 +1,498 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 编译为 JVM 字节码的 IR, 供 {@link IREmulator.Engine#Bytecode} 使用
+ * <br>
+ * 在 {@link DecodedIR} 的基础上, 把指令依次翻译为若干个形如 {@code static int chunkN(int[] registers)} 的静态方法,
+ * 用 {@link MethodHandles.Lookup#defineHiddenClass} 定义为隐藏类, 执行时按顺序调用, 由 HotSpot 即时编译为机器码:
+ * <ul>
+ *     <li>每个方法中读写的变量映射为该方法的局部变量: 第一次读取时从寄存器堆载入, 方法结束时只把之后还会被读取的变量写回.
+ *     临时变量一般只在同一条语句中使用, 因此大多只存在于局部变量中</li>
+ *     <li>立即数直接编码在指令中, 不再占用寄存器堆的槽位</li>
+ *     <li>每个方法的字节码不超过 {@link #METHOD_LIMIT} 字节. HotSpot 默认不编译超过 8000 字节的方法
+ *     (见 -XX:+DontCompileHugeMethods), 这也远小于 JVM 规范对方法长度 64KB 的限制</li>
+ *     <li>方法的返回值为 -1 表示正常结束, 否则为 {@link DecodedIR#FAIL} 指令的下标, 由调用者抛出异常.
+ *     FAIL 之后的指令不可能被执行, 不再翻译, 因此生成的代码中没有任何跳转, 也就不需要 StackMapTable</li>
+ * </ul>
+ * 返回值存放在寄存器堆末尾额外的两个槽位中: 是否有返回值, 以及返回值.
+ * <br>
+ * 本项目使用 Java 17, 其中还没有 java.lang.classfile, 所以这里自带一个只支持上述用途的最小 class 文件写出器.
+ */
+final class CompiledIR {
+    /**
+     * 单个方法的字节码长度上限, 须低于 HotSpot 的 HugeMethodLimit (8000)
+     */
+    static final int METHOD_LIMIT = 7900;
+
+    /**
+     * 每个类中的方法数上限; 常量池将满时也会提前换一个新的类
+     */
+    static final int METHODS_PER_CLASS = 4096;
+
+    static CompiledIR compile(DecodedIR decoded) {
+        return new Compiler(decoded).compile();
+    }
+
+    Optional<Integer> execute() {
+        final var slots = decoded.registers.length;
+        final var registers = Arrays.copyOf(decoded.registers, slots + 2);
+        for (final var chunk : chunks) {
+            final int failed;
+            try {
+                failed = (int) chunk.invokeExact(registers);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            if (failed >= 0) {
+                throw decoded.failure(failed);
+            }
+        }
+        return registers[slots] != 0 ? Optional.of(registers[slots + 1]) : Optional.empty();
+    }
+
+    /**
+     * @return 各方法翻译的第一条指令的下标, 供 {@link EngineCheck} 在方法的边界上构造测试
+     */
+    int[] getChunkStarts() {
+        return chunkStarts;
+    }
+
+    /**
+     * @return 各个类中第一个方法翻译的第一条指令的下标
+     */
+    int[] getClassStarts() {
+        return classStarts;
+    }
+
+    private CompiledIR(DecodedIR decoded, List<MethodHandle> chunks, int[] chunkStarts, int[] classStarts) {
+        this.decoded = decoded;
+        this.chunks = chunks;
+        this.chunkStarts = chunkStarts;
+        this.classStarts = classStarts;
+    }
+
+    private final DecodedIR decoded;
+    private final List<MethodHandle> chunks;
+    private final int[] chunkStarts;
+    private final int[] classStarts;
+
+    /**
+     * 逐条翻译指令, 按长度切分为方法, 按常量池的大小切分为类
+     */
+    private static final class Compiler {
+        private static final MethodType CHUNK_TYPE = MethodType.methodType(int.class, int[].class);
+        // 写回一个变量至多需要的字节数: aload_0, ldc_w, wide iload, iastore
+        private static final int STORE_BACK_BYTES = 9;
+        // 翻译一条指令至多需要的字节数
+        private static final int INSTRUCTION_BYTES = 32;
+        // 每个类中常量池的上限, 为单个方法可能加入的常量留出余量
+        private static final int POOL_LIMIT = 65535 - 4000;
+
+        Compiler(DecodedIR decoded) {
+            this.decoded = decoded;
+            this.returnFlag = decoded.registers.length;
+            this.localOf = new int[decoded.registers.length];
+            this.written = new boolean[decoded.registers.length];
+            this.lastRead = new int[decoded.registers.length];
+            Arrays.fill(lastRead, -1);
+            for (int idx = 0; idx < decoded.size; idx++) {
+                switch (decoded.ops[idx]) {
+                    case DecodedIR.MOV, DecodedIR.RET -> lastRead[decoded.lhs[idx]] = idx;
+                    case DecodedIR.ADD, DecodedIR.SUB, DecodedIR.MUL -> {
+                        lastRead[decoded.lhs[idx]] = idx;
+                        lastRead[decoded.rhs[idx]] = idx;
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        CompiledIR compile() {
+            var idx = 0;
+            var failed = false;
+            while (idx < decoded.size && !failed) {
+                if (classFile == null || classFile.poolSize() > POOL_LIMIT || classFile.methodCount() >= METHODS_PER_CLASS) {
+                    defineClass();
+                    classFile = new ClassFile(CLASS_NAME);
+                    classStarts.add(idx);
+                }
+
+                code = new Code(classFile);
+                chunkStarts.add(idx);
+                while (idx < decoded.size && code.size() + STORE_BACK_BYTES * touched.size() + INSTRUCTION_BYTES <= METHOD_LIMIT) {
+                    if (decoded.ops[idx] == DecodedIR.FAIL) {
+                        failed = true;
+                        break;
+                    }
+                    translate(idx++);
+                }
+
+                if (failed) {
+                    code.pushInt(idx);
+                } else {
+                    storeBack(idx - 1);
+                    code.pushInt(-1);
+                }
+                code.op(IRETURN);
+                classFile.addMethod("chunk" + chunkCount++, "([I)I", code);
+                for (final var slot : touched) {
+                    localOf[slot] = 0;
+                    written[slot] = false;
+                }
+                touched.clear();
+            }
+            defineClass();
+            return new CompiledIR(decoded, handles,
+                chunkStarts.stream().mapToInt(Integer::intValue).toArray(), classStarts.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private void translate(int idx) {
+            final var result = decoded.results[idx];
+            final var lhs = decoded.lhs[idx];
+            final var rhs = decoded.rhs[idx];
+            switch (decoded.ops[idx]) {
+                case DecodedIR.MOV -> {
+                    load(lhs);
+                    store(result);
+                }
+                case DecodedIR.ADD -> binary(IADD, result, lhs, rhs);
+                case DecodedIR.SUB -> binary(ISUB, result, lhs, rhs);
+                case DecodedIR.MUL -> binary(IMUL, result, lhs, rhs);
+                case DecodedIR.RET -> {
+                    code.op(ALOAD_0);
+                    code.pushInt(returnFlag + 1);
+                    load(lhs);
+                    code.op(IASTORE);
+                    setReturnFlag(1);
+                }
+                case DecodedIR.RET_NONE -> setReturnFlag(0);
+                default -> throw new RuntimeException("Unknown decoded instruction: " + decoded.ops[idx]);
+            }
+        }
+
+        private void binary(int opcode, int result, int lhs, int rhs) {
+            load(lhs);
+            load(rhs);
+            code.op(opcode);
+            store(result);
+        }
+
+        private void setReturnFlag(int value) {
+            code.op(ALOAD_0);
+            code.pushInt(returnFlag);
+            code.pushInt(value);
+            code.op(IASTORE);
+        }
+
+        /**
+         * 将槽位的值压栈: 立即数直接压入, 变量第一次读取时从寄存器堆载入并存入局部变量
+         */
+        private void load(int slot) {
+            if (decoded.constants[slot]) {
+                code.pushInt(decoded.registers[slot]);
+            } else if (localOf[slot] != 0) {
+                code.local(ILOAD, localOf[slot]);
+            } else {
+                code.op(ALOAD_0);
+                code.pushInt(slot);
+                code.op(IALOAD);
+                code.op(DUP);
+                code.local(ISTORE, allocate(slot));
+            }
+        }
+
+        private void store(int slot) {
+            final var local = localOf[slot] != 0 ? localOf[slot] : allocate(slot);
+            code.local(ISTORE, local);
+            written[slot] = true;
+        }
+
+        private int allocate(int slot) {
+            touched.add(slot);
+            localOf[slot] = touched.size(); // 局部变量 0 为寄存器堆
+            return localOf[slot];
+        }
+
+        /**
+         * 把本方法中写过, 且在 last 之后还会被读取的变量写回寄存器堆
+         */
+        private void storeBack(int last) {
+            for (final var slot : touched) {
+                if (written[slot] && lastRead[slot] > last) {
+                    code.op(ALOAD_0);
+                    code.pushInt(slot);
+                    code.local(ILOAD, localOf[slot]);
+                    code.op(IASTORE);
+                }
+            }
+        }
+
+        private void defineClass() {
+            if (classFile == null || classFile.methodCount() == 0) {
+                return;
+            }
+            try {
+                final var lookup = MethodHandles.lookup().defineHiddenClass(classFile.toBytes(), true);
+                for (final var name : classFile.methodNames()) {
+                    handles.add(lookup.findStatic(lookup.lookupClass(), name, CHUNK_TYPE));
+                }
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new RuntimeException("Failed to define compiled IR", e);
+            }
+        }
+
+        private static final String CLASS_NAME = "cn/edu/hitsz/compiler/utils/CompiledIR$Program";
+
+        private final DecodedIR decoded;
+        private final int returnFlag;
+        // 各槽位在当前方法中对应的局部变量, 0 表示尚未载入
+        private final int[] localOf;
+        private final boolean[] written;
+        // 各槽位最后一次被读取的指令下标, 从不被读取时为 -1
+        private final int[] lastRead;
+        // 当前方法中分配了局部变量的槽位, 按分配顺序排列
+        private final List<Integer> touched = new ArrayList<>();
+
+        private ClassFile classFile = null;
+        private Code code = null;
+        private int chunkCount = 0;
+        private final List<MethodHandle> handles = new ArrayList<>();
+        private final List<Integer> chunkStarts = new ArrayList<>();
+        private final List<Integer> classStarts = new ArrayList<>();
+    }
+
+    //============================== class 文件 ==============================
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int IALOAD = 0x2e;
+    private static final int ISTORE = 0x36;
+    private static final int IASTORE = 0x4f;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IRETURN = 0xac;
+    private static final int WIDE = 0xc4;
+
+    /**
+     * 一个方法的字节码. 生成的代码中没有跳转, 操作数栈的深度不超过 4
+     */
+    private static final class Code {
+        Code(ClassFile classFile) {
+            this.classFile = classFile;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void op(int opcode) {
+            bytes.writeByte(opcode);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                bytes.writeByte(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                bytes.writeShort(value);
+            } else {
+                final var index = classFile.integer(value);
+                if (index <= 0xff) {
+                    op(LDC);
+                    bytes.writeByte(index);
+                } else {
+                    op(LDC_W);
+                    bytes.writeShort(index);
+                }
+            }
+        }
+
+        /**
+         * @param opcode ILOAD 或 ISTORE
+         * @param local  局部变量的下标
+         */
+        void local(int opcode, int local) {
+            if (local <= 3) {
+                // iload_<n> 与 istore_<n>
+                op((opcode == ILOAD ? 0x1a : 0x3b) + local);
+            } else if (local <= 0xff) {
+                op(opcode);
+                bytes.writeByte(local);
+            } else {
+                op(WIDE);
+                op(opcode);
+                bytes.writeShort(local);
+            }
+            maxLocals = Math.max(maxLocals, local + 1);
+        }
+
+        private final ClassFile classFile;
+        private final Output bytes = new Output();
+        private int maxLocals = 1;
+    }
+
+    /**
+     * 只含无字段的静态方法的 class 文件, 父类为 Object
+     */
+    private static final class ClassFile {
+        ClassFile(String name) {
+            this.thisClass = classEntry(name);
+            this.superClass = classEntry("java/lang/Object");
+            this.codeName = utf8("Code");
+        }
+
+        int poolSize() {
+            return poolCount;
+        }
+
+        int methodCount() {
+            return methodNames.size();
+        }
+
+        List<String> methodNames() {
+            return methodNames;
+        }
+
+        int integer(int value) {
+            return integers.computeIfAbsent(value, key -> {
+                pool.writeByte(3); // CONSTANT_Integer
+                pool.writeInt(value);
+                return poolCount++;
+            });
+        }
+
+        void addMethod(String name, String descriptor, Code code) {
+            methodNames.add(name);
+            methods.writeShort(0x0009); // ACC_PUBLIC | ACC_STATIC
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1);
+            methods.writeShort(codeName);
+            methods.writeInt(12 + code.size());
+            methods.writeShort(4);
+            methods.writeShort(code.maxLocals);
+            methods.writeInt(code.size());
+            code.bytes.writeTo(methods);
+            methods.writeShort(0); // exception_table_length
+            methods.writeShort(0); // attributes_count
+        }
+
+        byte[] toBytes() {
+            final var out = new Output();
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(61); // Java 17
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces_count
+            out.writeShort(0); // fields_count
+            out.writeShort(methodNames.size());
+            methods.writeTo(out);
+            out.writeShort(0); // attributes_count
+            return out.toByteArray();
+        }
+
+        private int utf8(String text) {
+            // 这里只出现 ASCII 字符, 与 modified UTF-8 相同
+            return utf8s.computeIfAbsent(text, key -> {
+                pool.writeByte(1); // CONSTANT_Utf8
+                pool.writeShort(text.length());
+                pool.writeAscii(text);
+                return poolCount++;
+            });
+        }
+
+        private int classEntry(String name) {
+            final var nameIndex = utf8(name);
+            pool.writeByte(7); // CONSTANT_Class
+            pool.writeShort(nameIndex);
+            return poolCount++;
+        }
+
+        // 常量池的下标从 1 开始, poolCount 即 class 文件中的 constant_pool_count
+        private int poolCount = 1;
+        private final Output pool = new Output();
+        private final Output methods = new Output();
+        private final Map<String, Integer> utf8s = new HashMap<>();
+        private final Map<Integer, Integer> integers = new HashMap<>();
+        private final List<String> methodNames = new ArrayList<>();
+        private final int thisClass;
+        private final int superClass;
+        private final int codeName;
+    }
+
+    /**
+     * 按 class 文件的字节序 (大端) 写入内存的缓冲区. 不用 ByteArrayOutputStream, 因为它的每次写入都要加锁
+     */
+    private static final class Output {
+        void writeByte(int value) {
+            reserve(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeShort(int value) {
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeInt(int value) {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        void writeAscii(String text) {
+            for (int idx = 0; idx < text.length(); idx++) {
+                writeByte(text.charAt(idx));
+            }
+        }
+
+        void writeTo(Output out) {
+            out.reserve(size);
+            System.arraycopy(bytes, 0, out.bytes, out.size, size);
+            out.size += size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void reserve(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + length, bytes.length * 2));
+            }
+        }
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+    }
+}
@@ -0,0 +1,232 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * 预先译码的 IR, 供 {@link IREmulator} 中除逐条解释以外的各种执行方式共用
+ * <br>
+ * 每个 IR 变量在载入时被分配到寄存器堆 (一个 int 数组) 中的一个槽位, 每个不同的立即数也占一个槽位, 初值即为其值,
+ * 于是每条指令的操作数都只是一个槽位下标, 执行时不再需要区分变量与立即数, 也不需要求哈希或装箱.
+ * <br>
+ * 逐条解释时未赋值的变量的值为 null: 参与运算时抛出 NullPointerException, 被 MOV 时使目标也成为未赋值, 被 RET 时使返回值为空.
+ * IR 是没有跳转的直线代码, 所以在载入时就能确定每次读取的变量是否已被赋值, 上述三种情况分别被译为
+ * {@link #FAIL}, 不产生指令, 与 {@link #RET_NONE}, 执行时不必再为每个变量记录是否已赋值.
+ */
+final class DecodedIR {
+    static final byte MOV = 0;
+    static final byte ADD = 1;
+    static final byte SUB = 2;
+    static final byte MUL = 3;
+    static final byte RET = 4;
+    /**
+     * 返回未赋值的变量, 使返回值为空
+     */
+    static final byte RET_NONE = 5;
+    /**
+     * 以未赋值的变量参与运算, 执行到此处时抛出异常
+     */
+    static final byte FAIL = 6;
+
+    static DecodedIR decode(List<Instruction> instructions) {
+        final var slots = new HashMap<IRVariable, Integer>();
+        final var decoder = new Decoder(0, instructions.size());
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            final var result = kind == InstructionKind.RET ? -1 : slots.computeIfAbsent(instruction.getResult(), decoder::newSlot);
+            final var operands = instruction.getOperands();
+            final var lhs = decoder.slotOf(operands.get(0), slots);
+            final var rhs = operands.size() > 1 ? decoder.slotOf(operands.get(1), slots) : -1;
+            decoder.add(kind, result, lhs, rhs);
+        }
+        final var names = decoder.names;
+        return decoder.finish(slot -> names[slot]);
+    }
+
+    static DecodedIR decode(IRBuffer buffer) {
+        // 变量直接以其编号为槽位
+        final var context = buffer.getContext();
+        final var decoder = new Decoder(context.getVariableCount(), buffer.size());
+
+        for (int idx = 0; idx < buffer.size(); idx++) {
+            final var kind = buffer.getKind(idx);
+            final var lhs = buffer.isImmediate(idx, 0) ? decoder.constant(buffer.getOperand(idx, 0)) : buffer.getOperand(idx, 0);
+            final var rhs = !kind.isBinary() ? -1
+                : buffer.isImmediate(idx, 1) ? decoder.constant(buffer.getOperand(idx, 1)) : buffer.getOperand(idx, 1);
+            decoder.add(kind, buffer.getResult(idx), lhs, rhs);
+        }
+        // 变量名只在报告错误时才需要, 届时再从上下文中取
+        return decoder.finish(slot -> context.getVariable(slot).getName());
+    }
+
+    final int size;
+    final byte[] ops;
+    final int[] results;
+    final int[] lhs;
+    final int[] rhs;
+    /**
+     * 寄存器堆的初值: 立即数的槽位为其值, 变量的槽位为 0
+     */
+    final int[] registers;
+    /**
+     * 各槽位是否为立即数, 立即数的槽位不会被写入
+     */
+    final boolean[] constants;
+    /**
+     * 由变量的槽位求其名字, 仅用于报告错误
+     */
+    private final IntFunction<String> names;
+
+    /**
+     * 执行到 FAIL 指令时抛出的异常, 与逐条解释时对 null 拆箱的异常同类
+     *
+     * @param index 指令的下标
+     */
+    RuntimeException failure(int index) {
+        // FAIL 指令的结果槽位记录的是未赋值的操作数
+        return new NullPointerException("IR variable %s is used before assignment".formatted(names.apply(results[index])));
+    }
+
+    private DecodedIR(int size, byte[] ops, int[] results, int[] lhs, int[] rhs, int[] registers, boolean[] constants, IntFunction<String> names) {
+        this.size = size;
+        this.ops = ops;
+        this.results = results;
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.registers = registers;
+        this.constants = constants;
+        this.names = names;
+    }
+
+    /**
+     * 逐条追加指令, 同时记录每个槽位当前是否已被赋值
+     */
+    private static final class Decoder {
+        private static final int SMALL_MIN = -128;
+        private static final int SMALL_MAX = 1024;
+
+        /**
+         * @param variables    预先分配的变量槽位数
+         * @param instructions 预计的指令条数, 用于一次分配好各数组
+         */
+        Decoder(int variables, int instructions) {
+            Arrays.fill(smallConstants, -1);
+            grow(variables + 16);
+            slots = variables;
+            ops = new byte[Math.max(16, instructions)];
+            results = new int[ops.length];
+            lhs = new int[ops.length];
+            rhs = new int[ops.length];
+        }
+
+        int newSlot(IRVariable variable) {
+            grow(slots + 1);
+            names[slots] = variable.getName();
+            return slots++;
+        }
+
+        int constant(int value) {
+            // 常见的小立即数直接查表, 不必装箱后查 Map
+            final var small = value >= SMALL_MIN && value < SMALL_MAX;
+            if (small && smallConstants[value - SMALL_MIN] >= 0) {
+                return smallConstants[value - SMALL_MIN];
+            }
+            if (!small && largeConstants.containsKey(value)) {
+                return largeConstants.get(value);
+            }
+
+            grow(slots + 1);
+            values[slots] = value;
+            defined[slots] = true;
+            constants[slots] = true;
+            if (small) {
+                smallConstants[value - SMALL_MIN] = slots;
+            } else {
+                largeConstants.put(value, slots);
+            }
+            return slots++;
+        }
+
+        int slotOf(IRValue value, Map<IRVariable, Integer> slots) {
+            if (value instanceof IRImmediate immediate) {
+                return constant(immediate.getValue());
+            }
+            return slots.computeIfAbsent((IRVariable) value, this::newSlot);
+        }
+
+        void add(InstructionKind kind, int result, int lhs, int rhs) {
+            final var lhsDefined = defined[lhs];
+            final var rhsDefined = rhs < 0 || defined[rhs];
+            final byte op = switch (kind) {
+                case MOV -> lhsDefined ? MOV : -1;
+                case ADD -> lhsDefined && rhsDefined ? ADD : FAIL;
+                case SUB -> lhsDefined && rhsDefined ? SUB : FAIL;
+                case MUL -> lhsDefined && rhsDefined ? MUL : FAIL;
+                case RET -> lhsDefined ? RET : RET_NONE;
+            };
+
+            if (kind != InstructionKind.RET && op != FAIL) {
+                // 被赋以未赋值变量的值的变量同样视为未赋值, 不产生指令
+                defined[result] = op != -1;
+            }
+            if (op == -1) {
+                return;
+            }
+            if (op == FAIL) {
+                result = lhsDefined ? rhs : lhs;
+            }
+
+            if (size == ops.length) {
+                final var capacity = ops.length * 2;
+                ops = Arrays.copyOf(ops, capacity);
+                results = Arrays.copyOf(results, capacity);
+                this.lhs = Arrays.copyOf(this.lhs, capacity);
+                this.rhs = Arrays.copyOf(this.rhs, capacity);
+            }
+            ops[size] = op;
+            results[size] = result;
+            this.lhs[size] = lhs;
+            this.rhs[size] = rhs < 0 ? lhs : rhs;
+            size++;
+        }
+
+        DecodedIR finish(IntFunction<String> names) {
+            return new DecodedIR(size, ops, results, lhs, rhs, Arrays.copyOf(values, slots), Arrays.copyOf(constants, slots), names);
+        }
+
+        private void grow(int capacity) {
+            if (capacity > values.length) {
+                final var newCapacity = Math.max(capacity, values.length * 2);
+                values = Arrays.copyOf(values, newCapacity);
+                names = Arrays.copyOf(names, newCapacity);
+                defined = Arrays.copyOf(defined, newCapacity);
+                constants = Arrays.copyOf(constants, newCapacity);
+            }
+        }
+
+        // 各槽位的初值, 变量名 (仅由 newSlot 分配的槽位), 当前是否已被赋值与是否为立即数, 只有前 slots 个有效
+        private int slots;
+        private int[] values = new int[16];
+        private String[] names = new String[16];
+        private boolean[] defined = new boolean[16];
+        private boolean[] constants = new boolean[16];
+        private final int[] smallConstants = new int[SMALL_MAX - SMALL_MIN];
+        private final Map<Integer, Integer> largeConstants = new HashMap<>();
+
+        private int size = 0;
+        private byte[] ops;
+        private int[] results;
+        private int[] lhs;
+        private int[] rhs;
+    }
+}
@@ -0,0 +1,190 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 检查 {@link IREmulator} 的各种执行方式对同一段 IR 给出相同的结果
+ * <br>
+ * 用 {@link ProgramGenerator} 生成程序并编译到 IR, 以 {@link Instruction} 列表与 {@link IRBuffer} 两种形式,
+ * 分别用每种 {@link IREmulator.Engine} 执行, 返回值须与生成时求出的预期结果相同. 重点覆盖 {@link CompiledIR} 的两处边界:
+ * <ul>
+ *     <li>方法的边界: 程序被拆成多个不超过 {@link CompiledIR#METHOD_LIMIT} 字节的方法, 在每个方法的第一条指令附近插入一条
+ *     读取未赋值变量的运算, 各执行方式须在同一处抛出同一类型的异常</li>
+ *     <li>类的边界: 常量取遍整个 int 范围时, 每个常量都要在常量池中占一项, 常量池写满前就会换一个新的类.
+ *     此时各类的方法数远少于 {@link CompiledIR#METHODS_PER_CLASS}, 因此多出的类只可能是常量池写满造成的</li>
+ * </ul>
+ * 发现不一致时以非零状态退出.
+ * <br>
+ * 命令行用法 (在仓库根目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.utils.EngineCheck
+ * </pre>
+ */
+public class EngineCheck {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var check = new EngineCheck(TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH));
+
+        check.checkProgram("single method", new ProgramGenerator(4, 20, 3, 3, 0), Boundary.None);
+        check.checkProgram("method boundaries", new ProgramGenerator(4, 3000, 3, 3, 1), Boundary.Method);
+        check.checkProgram("constant pool boundaries", new ProgramGenerator(4, 150000, 3, 3, Integer.MAX_VALUE, 2), Boundary.Class);
+
+        if (check.mismatches > 0) {
+            System.out.printf("%d mismatches%n", check.mismatches);
+            System.exit(1);
+        }
+        System.out.println("All engines agree");
+    }
+
+    public EngineCheck(LRTable table) {
+        this.table = table;
+    }
+
+    /**
+     * 程序须跨越的边界, 错误注入在每个这样的边界附近
+     */
+    private enum Boundary {
+        /**
+         * 不要求跨越边界, 也不注入错误
+         */
+        None,
+        /**
+         * 至少跨越一个方法的边界
+         */
+        Method,
+        /**
+         * 常量池写满而换过类. 这样的程序有上百个方法, 只在类的边界注入错误
+         */
+        Class
+    }
+
+    /**
+     * 生成并编译一段程序, 检查各执行方式的结果
+     *
+     * @param name       名称, 用于输出
+     * @param generator  程序生成器
+     * @param boundary  程序须跨越的边界
+     */
+    private void checkProgram(String name, ProgramGenerator generator, Boundary boundary) {
+        final var instructions = compileToIR(generator);
+        final var compiled = CompiledIR.compile(DecodedIR.decode(instructions));
+        final var chunkStarts = compiled.getChunkStarts();
+        final var classStarts = compiled.getClassStarts();
+        System.out.printf("%s: %d instructions, %d methods, %d classes%n",
+            name, instructions.size(), chunkStarts.length, classStarts.length);
+
+        if (boundary == Boundary.Method && chunkStarts.length < 2) {
+            report(name, "program does not cross a method boundary");
+        }
+        // 只因方法数而换类时需要的类数
+        final var byMethods = (chunkStarts.length + CompiledIR.METHODS_PER_CLASS - 1) / CompiledIR.METHODS_PER_CLASS;
+        if (boundary == Boundary.Class && classStarts.length <= byMethods) {
+            report(name, "constant pool never fills a class");
+        }
+
+        compare(name, instructions, "Optional[%d]".formatted(generator.getExpectedResult()));
+        if (boundary == Boundary.None) {
+            return;
+        }
+
+        // 每个边界的第一条指令前后各一处, 以及程序的开头与末尾
+        final var positions = new TreeSet<Integer>();
+        for (final var start : boundary == Boundary.Method ? chunkStarts : classStarts) {
+            for (int offset = -1; offset <= 1; offset++) {
+                positions.add(Math.min(Math.max(start + offset, 0), instructions.size()));
+            }
+        }
+        positions.add(instructions.size());
+        for (final var position : positions) {
+            final var injected = new ArrayList<>(instructions);
+            injected.add(position, Instruction.createAdd(IRVariable.temp(), IRVariable.named("undefined"), IRImmediate.of(1)));
+            compare("%s, failure at %d".formatted(name, position), injected, null);
+        }
+        System.out.printf("%s: %d failure positions checked%n", name, positions.size());
+    }
+
+    /**
+     * 以两种形式与四种执行方式执行同一段 IR, 各结果须相同
+     *
+     * @param name         名称, 用于输出
+     * @param instructions IR
+     * @param expected     预期的结果; 为 null 时只要求各执行方式的结果相同
+     */
+    private void compare(String name, List<Instruction> instructions, String expected) {
+        final var buffer = IRBuffer.of(instructions);
+        var reference = expected;
+        for (final var engine : IREmulator.Engine.values()) {
+            for (final var fromBuffer : new boolean[]{false, true}) {
+                final var emulator = fromBuffer ? IREmulator.load(buffer, engine) : IREmulator.load(instructions, engine);
+                final var outcome = outcomeOf(emulator);
+                if (reference == null) {
+                    reference = outcome;
+                } else if (!reference.equals(outcome)) {
+                    report(name, "%s (%s) gives %s, expected %s".formatted(engine, fromBuffer ? "IRBuffer" : "List", outcome, reference));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 返回值, 或抛出的异常的类型. 异常信息中的变量名随形式不同, 不做比较
+     */
+    private static String outcomeOf(IREmulator emulator) {
+        try {
+            return emulator.execute().toString();
+        } catch (RuntimeException e) {
+            return "throws " + e.getClass().getName();
+        }
+    }
+
+    private List<Instruction> compileToIR(ProgramGenerator generator) {
+        final var text = new StringWriter();
+        try {
+            generator.write(text);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on generating program", e);
+        }
+
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(text.getBuffer());
+        lexer.run();
+
+        final var irGenerator = new IRGenerator();
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(lexer.getTokens());
+        parser.loadLRTable(table);
+        parser.registerObserver(new ProductionCollector(GrammarInfo.getBeginProduction()));
+        parser.registerObserver(new SemanticAnalyzer());
+        parser.registerObserver(irGenerator);
+        parser.run();
+        return irGenerator.getIR();
+    }
+
+    private void report(String name, String message) {
+        System.out.printf("MISMATCH %s: %s%n", name, message);
+        mismatches++;
+    }
+
+    private final LRTable table;
+    private int mismatches = 0;
+}
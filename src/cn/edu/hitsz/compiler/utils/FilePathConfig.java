@@ -52,6 +52,11 @@ public final class FilePathConfig {
      */
     public static final String INTERMEDIATE_CODE_PATH = "data/out/intermediate_code.txt";
 
+    /**
+     * 经常量传播与常量折叠后的中间代码
+     */
+    public static final String OPTIMIZED_CODE_PATH = "data/out/optimized_code.txt";
+
     /**
      * IR 模拟执行的结果
      */
@@ -62,6 +67,16 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 各阶段的耗时与分配量统计
+     */
+    public static final String PHASE_METRICS_PATH = "data/out/phase_metrics.json";
+
+    /**
+     * LR 分析表的二进制缓存
+     */
+    public static final String LR1_TABLE_CACHE_PATH = "data/out/LR1_table.bin";
+
     private FilePathConfig() {
     }
 }
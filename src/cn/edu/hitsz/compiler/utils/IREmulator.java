@@ -1,5 +1,6 @@
 package cn.edu.hitsz.compiler.utils;
 
+import cn.edu.hitsz.compiler.ir.IRBuffer;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
@@ -15,10 +16,55 @@ import java.util.Optional;
  */
 public class IREmulator {
     public static IREmulator load(List<Instruction> instructions) {
-        return new IREmulator(instructions);
+        return load(instructions, Engine.Interpreter);
+    }
+
+    /**
+     * @param instructions IR
+     * @param engine       执行方式, 各种方式的结果 (包括出错时抛出的异常的类型) 相同
+     * @return 模拟器
+     */
+    public static IREmulator load(List<Instruction> instructions, Engine engine) {
+        return switch (engine) {
+            case Interpreter -> new IREmulator(instructions);
+            case RegisterFile -> new IREmulator(new RegisterFileExecutor(DecodedIR.decode(instructions)));
+            case Closure -> new IREmulator(ClosureIR.compile(DecodedIR.decode(instructions))::execute);
+            case Bytecode -> new IREmulator(CompiledIR.compile(DecodedIR.decode(instructions))::execute);
+        };
+    }
+
+    /**
+     * 直接模拟执行 {@link IRBuffer} 中的 IR: 变量的值存放在以变量编号为下标的数组中, 不再需要按名字求哈希
+     *
+     * @param buffer IR
+     * @return 模拟器
+     */
+    public static IREmulator load(IRBuffer buffer) {
+        return load(buffer, Engine.Interpreter);
+    }
+
+    /**
+     * @param buffer IR
+     * @param engine 执行方式, 各种方式的结果 (包括出错时抛出的异常的类型) 相同
+     * @return 模拟器
+     */
+    public static IREmulator load(IRBuffer buffer, Engine engine) {
+        return switch (engine) {
+            case Interpreter -> new IREmulator(new BufferInterpreter(buffer));
+            case RegisterFile -> new IREmulator(new RegisterFileExecutor(DecodedIR.decode(buffer)));
+            case Closure -> new IREmulator(ClosureIR.compile(DecodedIR.decode(buffer))::execute);
+            case Bytecode -> new IREmulator(CompiledIR.compile(DecodedIR.decode(buffer))::execute);
+        };
     }
 
     public Optional<Integer> execute() {
+        return executor.execute();
+    }
+
+    /**
+     * {@link Engine#Interpreter} 方式下逐条解释 {@link Instruction} 列表
+     */
+    private Optional<Integer> interpret() {
         for (final var instruction : instructions) {
             switch (instruction.getKind()) {
                 case MOV -> {
@@ -63,13 +109,116 @@ public class IREmulator {
         }
     }
 
+    /**
+     * 载入好的 IR 在某种执行方式下的执行过程. 每种 {@link Engine} 对应一种实现, 载入时选定, 之后每次执行都直接调用它
+     */
+    @FunctionalInterface
+    private interface Executor {
+        Optional<Integer> execute();
+    }
+
+    /**
+     * {@link Engine#Interpreter} 方式下解释 {@link IRBuffer}: 与逐条解释 {@link Instruction} 相同, 只是按编号存取变量;
+     * 未赋值的变量同样为 null
+     */
+    private record BufferInterpreter(IRBuffer buffer) implements Executor {
+        @Override
+        public Optional<Integer> execute() {
+            final var values = new Integer[buffer.getContext().getVariableCount()];
+            Integer returnValue = null;
+            for (int idx = 0; idx < buffer.size(); idx++) {
+                switch (buffer.getKind(idx)) {
+                    case MOV -> values[buffer.getResult(idx)] = eval(values, idx, 0);
+                    case ADD -> values[buffer.getResult(idx)] = eval(values, idx, 0) + eval(values, idx, 1);
+                    case SUB -> values[buffer.getResult(idx)] = eval(values, idx, 0) - eval(values, idx, 1);
+                    case MUL -> values[buffer.getResult(idx)] = eval(values, idx, 0) * eval(values, idx, 1);
+                    case RET -> returnValue = eval(values, idx, 0);
+                    default -> throw new RuntimeException("Unknown instruction kind: " + buffer.getKind(idx));
+                }
+            }
+
+            return Optional.ofNullable(returnValue);
+        }
+
+        private Integer eval(Integer[] values, int index, int operand) {
+            final var value = buffer.getOperand(index, operand);
+            return buffer.isImmediate(index, operand) ? Integer.valueOf(value) : values[value];
+        }
+    }
+
+    /**
+     * {@link Engine#RegisterFile} 方式: 在预先译码的指令上执行, 所有值都存放在一个 int 数组中
+     */
+    private record RegisterFileExecutor(DecodedIR decoded) implements Executor {
+        @Override
+        public Optional<Integer> execute() {
+            final var registers = decoded.registers.clone();
+            final var ops = decoded.ops;
+            final var results = decoded.results;
+            final var lhs = decoded.lhs;
+            final var rhs = decoded.rhs;
+
+            var hasReturnValue = false;
+            var returnValue = 0;
+            for (int idx = 0; idx < decoded.size; idx++) {
+                switch (ops[idx]) {
+                    case DecodedIR.MOV -> registers[results[idx]] = registers[lhs[idx]];
+                    case DecodedIR.ADD -> registers[results[idx]] = registers[lhs[idx]] + registers[rhs[idx]];
+                    case DecodedIR.SUB -> registers[results[idx]] = registers[lhs[idx]] - registers[rhs[idx]];
+                    case DecodedIR.MUL -> registers[results[idx]] = registers[lhs[idx]] * registers[rhs[idx]];
+                    case DecodedIR.RET -> {
+                        hasReturnValue = true;
+                        returnValue = registers[lhs[idx]];
+                    }
+                    case DecodedIR.RET_NONE -> hasReturnValue = false;
+                    default -> throw decoded.failure(idx);
+                }
+            }
+
+            return hasReturnValue ? Optional.of(returnValue) : Optional.empty();
+        }
+    }
+
+    /**
+     * IR 的执行方式
+     */
+    public enum Engine {
+        /**
+         * 逐条解释执行, 变量的值存放在以变量为键的 Map (或以变量编号为下标的数组) 中
+         */
+        Interpreter,
+        /**
+         * 载入时将各变量与立即数分配到寄存器堆的槽位并预先译码, 执行时只读写一个 int 数组, 见 {@link DecodedIR}
+         */
+        RegisterFile,
+        /**
+         * 载入时为每条指令按其种类与操作数的种类选定一种专门的结点, 执行时依次调用, 见 {@link ClosureIR}.
+         * 载入很快, 适合较短的程序
+         */
+        Closure,
+        /**
+         * 载入时将 IR 编译为隐藏类中的 JVM 字节码, 执行时由 HotSpot 即时编译, 见 {@link CompiledIR}.
+         * 载入的开销最大, 适合反复执行的较长的程序
+         */
+        Bytecode
+    }
+
     private IREmulator(List<Instruction> instructions) {
         this.instructions = instructions;
+        this.executor = this::interpret;
+        this.environment = new HashMap<>();
+        this.returnValue = null;
+    }
+
+    private IREmulator(Executor executor) {
+        this.instructions = List.of();
+        this.executor = executor;
         this.environment = new HashMap<>();
         this.returnValue = null;
     }
 
     private final List<Instruction> instructions;
+    private final Executor executor;
     private final Map<IRVariable, Integer> environment;
     private Integer returnValue;
 }
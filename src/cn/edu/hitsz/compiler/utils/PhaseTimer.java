@@ -0,0 +1,169 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 记录编译各阶段开销的工具
+ * <br>
+ * 每个阶段记录墙钟时间, 当前线程的 CPU 时间, 当前线程分配的字节数 (后两者来自 ThreadMXBean, JVM 不支持时记为 -1),
+ * 以及该阶段处理的各种条目的数量 (如 token 数, 规约次数, IR 条数). 同名阶段多次 begin/end 时各项数据累加.
+ * 阶段中有工作交给其他线程完成时, 由这些线程用 {@link #currentThreadCpuNanos()} 与 {@link #currentThreadAllocatedBytes()}
+ * 自行测量, 再通过 {@link Phase#addWorkerCost(long, long)} 计入该阶段.
+ * 全部结果可以输出为 JSON, 便于外部工具收集.
+ * <pre>
+ * final var timer = new PhaseTimer();
+ * final var phase = timer.begin("lexer");
+ * ...
+ * phase.end().count("tokens", tokenCount);
+ * timer.dumpJson(FilePathConfig.PHASE_METRICS_PATH);
+ * </pre>
+ */
+public class PhaseTimer {
+    /**
+     * 开始 (或继续) 记录一个阶段
+     *
+     * @param name 阶段名
+     * @return 该阶段, 结束时调用其 end 方法
+     */
+    public Phase begin(String name) {
+        final var phase = phases.computeIfAbsent(name, Phase::new);
+        phase.start();
+        return phase;
+    }
+
+    /**
+     * 以 JSON 格式输出所有阶段的数据, 阶段按第一次 begin 的顺序排列
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpJson(String path) {
+        final var lines = new ArrayList<String>();
+        lines.add("{");
+        lines.add("  \"phases\": [");
+
+        var remaining = phases.size();
+        for (final var phase : phases.values()) {
+            final var counts = new ArrayList<String>();
+            phase.counts.forEach((item, value) -> counts.add("\"%s\": %d".formatted(item, value)));
+
+            lines.add("    {\"name\": \"%s\", \"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d, \"counts\": {%s}}%s".formatted(
+                phase.name, phase.wallNanos, phase.cpuNanos, phase.allocatedBytes,
+                String.join(", ", counts), --remaining > 0 ? "," : ""));
+        }
+
+        lines.add("  ]");
+        lines.add("}");
+        FileUtils.writeLines(path, lines);
+    }
+
+    /**
+     * 一个阶段的数据
+     */
+    public class Phase {
+        /**
+         * 结束记录, 将本次 begin 以来的开销累加到该阶段中
+         *
+         * @return 该阶段, 便于继续记录条目数
+         */
+        public Phase end() {
+            if (!running) {
+                throw new RuntimeException("Phase %s is not running".formatted(name));
+            }
+
+            wallNanos += System.nanoTime() - wallStart;
+            if (cpuStart >= 0) {
+                cpuNanos += currentThreadCpuNanos() - cpuStart;
+            }
+            if (allocatedStart >= 0) {
+                allocatedBytes += currentThreadAllocatedBytes() - allocatedStart;
+            }
+            running = false;
+            return this;
+        }
+
+        /**
+         * 累加该阶段在其他线程中完成的工作的开销. 墙钟时间已经包含在调用线程的记录中, 不再累加
+         *
+         * @param cpuNanos       其他线程的 CPU 时间之和, 不支持时为 -1
+         * @param allocatedBytes 其他线程分配的字节数之和, 不支持时为 -1
+         * @return 该阶段
+         */
+        public Phase addWorkerCost(long cpuNanos, long allocatedBytes) {
+            if (this.cpuNanos >= 0 && cpuNanos >= 0) {
+                this.cpuNanos += cpuNanos;
+            }
+            if (this.allocatedBytes >= 0 && allocatedBytes >= 0) {
+                this.allocatedBytes += allocatedBytes;
+            }
+            return this;
+        }
+
+        /**
+         * 记录该阶段处理的条目数
+         *
+         * @param item  条目名
+         * @param value 数量
+         * @return 该阶段
+         */
+        public Phase count(String item, long value) {
+            counts.merge(item, value, Long::sum);
+            return this;
+        }
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        private void start() {
+            if (running) {
+                throw new RuntimeException("Phase %s is already running".formatted(name));
+            }
+
+            running = true;
+            wallStart = System.nanoTime();
+            cpuStart = currentThreadCpuNanos();
+            allocatedStart = currentThreadAllocatedBytes();
+            if (!cpuSupported) {
+                cpuNanos = -1;
+            }
+            if (!allocatedSupported) {
+                allocatedBytes = -1;
+            }
+        }
+
+        private final String name;
+        private final Map<String, Long> counts = new LinkedHashMap<>();
+        private long wallNanos = 0;
+        private long cpuNanos = 0;
+        private long allocatedBytes = 0;
+
+        private boolean running = false;
+        private long wallStart;
+        private long cpuStart;
+        private long allocatedStart;
+    }
+
+    /**
+     * @return 当前线程至今的 CPU 时间, JVM 不支持时为 -1
+     */
+    public static long currentThreadCpuNanos() {
+        return cpuSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * @return 当前线程至今分配的字节数, JVM 不支持时为 -1
+     */
+    public static long currentThreadAllocatedBytes() {
+        return allocatedSupported ? ((com.sun.management.ThreadMXBean) threadBean).getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuSupported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+    private static final boolean allocatedSupported = threadBean instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+}
@@ -0,0 +1,228 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 生成任意规模的, 符合 grammar.txt 的合法源程序, 用于对整个编译流程做压力测试
+ * <br>
+ * 生成的程序形如:
+ * <pre>
+ * int v0;
+ * int v1;
+ * ...
+ * v0 = 42;
+ * v1 = v0 * ( 7 - v0 ) + 3;
+ * ...
+ * return v1;
+ * </pre>
+ * 第 i 条赋值语句的左部为 {@code v(i % declarations)}, 右部为一棵随机生成的深度不超过 expressionDepth 的表达式树,
+ * 其叶子为常量或 "最近被赋值的 livePressure 个变量" 之一. 因此 livePressure 近似于同一时刻活跃的具名变量数,
+ * 即汇编生成时的寄存器压力 (参考 data/in/reg-alloc.txt); 最后返回最后一个被赋值的变量.
+ * 注意目前的 AssemblyGenerator 以整个程序为范围计算具名变量的活跃区间且不会溢出到内存,
+ * 因此 declarations 超过 4 左右时汇编生成就会因寄存器不足而失败.
+ * <br>
+ * 生成的同时按 Java int 的运算规则 (与 IREmulator 相同) 求出每个变量的值, 从而得到 IR 模拟执行的预期结果.
+ * 程序直接写入 Writer, 不会在内存中拼出完整的源程序.
+ * <br>
+ * 命令行用法 (在仓库根目录下运行, 各参数均可省略):
+ * <pre>
+ * java cn.edu.hitsz.compiler.utils.ProgramGenerator --out data/in/generated.txt --expected data/out/generated_result.txt
+ *     --declarations 4 --statements 100000 --depth 3 --pressure 3 --max-constant 99 --seed 0
+ * </pre>
+ */
+public class ProgramGenerator {
+    public static void main(String[] args) {
+        var out = "data/in/generated.txt";
+        var expected = "data/out/generated_result.txt";
+        var declarations = 4;
+        var statements = 1000;
+        var depth = 3;
+        var pressure = 3;
+        var maxConstant = 99;
+        var seed = 0L;
+
+        for (int idx = 0; idx + 1 < args.length; idx += 2) {
+            final var value = args[idx + 1];
+            switch (args[idx]) {
+                case "--out" -> out = value;
+                case "--expected" -> expected = value;
+                case "--declarations" -> declarations = Integer.parseInt(value);
+                case "--statements" -> statements = Integer.parseInt(value);
+                case "--depth" -> depth = Integer.parseInt(value);
+                case "--pressure" -> pressure = Integer.parseInt(value);
+                case "--max-constant" -> maxConstant = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new RuntimeException("Unknown option: " + args[idx]);
+            }
+        }
+
+        final var generator = new ProgramGenerator(declarations, statements, depth, pressure, maxConstant, seed);
+        generator.writeTo(out);
+        FileUtils.writeFile(expected, Integer.toString(generator.getExpectedResult()));
+    }
+
+    /**
+     * @param declarations    声明的变量数
+     * @param statements      赋值语句的条数 (不含声明与最后的 return)
+     * @param expressionDepth 表达式树的最大深度, 为 1 时右部只有单个常量或变量
+     * @param livePressure    表达式可以引用的最近被赋值的变量数
+     * @param seed            随机数种子, 相同参数与种子总是生成相同的程序
+     */
+    public ProgramGenerator(int declarations, int statements, int expressionDepth, int livePressure, long seed) {
+        this(declarations, statements, expressionDepth, livePressure, 99, seed);
+    }
+
+    /**
+     * @param declarations    声明的变量数
+     * @param statements      赋值语句的条数 (不含声明与最后的 return)
+     * @param expressionDepth 表达式树的最大深度, 为 1 时右部只有单个常量或变量
+     * @param livePressure    表达式可以引用的最近被赋值的变量数
+     * @param maxConstant     常量的最大值, 常量在 [1, maxConstant] 中均匀选取
+     * @param seed            随机数种子, 相同参数与种子总是生成相同的程序
+     */
+    public ProgramGenerator(int declarations, int statements, int expressionDepth, int livePressure, int maxConstant, long seed) {
+        if (declarations < 1 || statements < 1 || expressionDepth < 1 || livePressure < 1 || maxConstant < 1) {
+            throw new RuntimeException("Arguments of program generator must be positive");
+        }
+
+        this.declarations = declarations;
+        this.statements = statements;
+        this.expressionDepth = expressionDepth;
+        this.livePressure = livePressure;
+        this.maxConstant = maxConstant;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 将生成的程序写入文件
+     *
+     * @param path 文件路径
+     */
+    public void writeTo(String path) {
+        try (final var writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.US_ASCII)) {
+            write(writer);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 生成程序并写入 Writer, 只能调用一次
+     *
+     * @param writer 输出
+     */
+    public void write(Writer writer) throws IOException {
+        if (expectedResult != null) {
+            throw new RuntimeException("Program has already been generated");
+        }
+
+        final var out = writer instanceof BufferedWriter buffered ? buffered : new BufferedWriter(writer);
+        final var values = new int[declarations];
+        // 最近被赋值的变量, 队首为最新的
+        final var live = new ArrayDeque<Integer>();
+        final var text = new StringBuilder();
+
+        for (int idx = 0; idx < declarations; idx++) {
+            out.write("int v" + idx + ";\n");
+        }
+
+        var target = 0;
+        for (int idx = 0; idx < statements; idx++) {
+            target = idx % declarations;
+
+            text.setLength(0);
+            final var value = expression(expressionDepth, Precedence.Sum, new ArrayList<>(live), values, text);
+            values[target] = value;
+            out.write("v" + target + " = " + text + ";\n");
+
+            live.remove(target);
+            live.addFirst(target);
+            if (live.size() > livePressure) {
+                live.removeLast();
+            }
+        }
+
+        out.write("return v" + target + ";\n");
+        out.flush();
+        expectedResult = values[target];
+    }
+
+    /**
+     * @return 生成的程序交由 IREmulator 执行时应得到的返回值
+     */
+    public int getExpectedResult() {
+        if (expectedResult == null) {
+            throw new RuntimeException("Program has not been generated yet");
+        }
+        return expectedResult;
+    }
+
+    /**
+     * 表达式所处位置要求的优先级, 对应文法中的 E, A, B 三个非终结符
+     */
+    private enum Precedence {Sum, Product, Primary}
+
+    /**
+     * 随机生成一棵表达式树, 将其文本追加到 text 中并返回其值
+     *
+     * @param depth    剩余深度
+     * @param required 所处位置要求的优先级, 生成的表达式优先级更低时需要加括号
+     * @param live     可以引用的变量
+     * @param values   各变量当前的值
+     * @param text     输出
+     * @return 表达式的值
+     */
+    private int expression(int depth, Precedence required, List<Integer> live, int[] values, StringBuilder text) {
+        if (depth == 1 || random.nextInt(4) == 0) {
+            // 叶子: 有可引用的变量时多数情况下引用变量, 否则为常量
+            if (!live.isEmpty() && random.nextInt(4) != 0) {
+                final var variable = live.get(random.nextInt(live.size()));
+                text.append('v').append(variable);
+                return values[variable];
+            } else {
+                final var constant = random.nextInt(maxConstant) + 1;
+                text.append(constant);
+                return constant;
+            }
+        }
+
+        final var operator = "+-*".charAt(random.nextInt(3));
+        // 按文法 E -> E + A | E - A, A -> A * B 确定左右操作数所处位置的优先级
+        final var self = operator == '*' ? Precedence.Product : Precedence.Sum;
+        final var rightRequired = operator == '*' ? Precedence.Primary : Precedence.Product;
+        final var needParentheses = self.compareTo(required) < 0;
+
+        if (needParentheses) {
+            text.append("( ");
+        }
+        final var lhs = expression(depth - 1, self, live, values, text);
+        text.append(' ').append(operator).append(' ');
+        final var rhs = expression(depth - 1, rightRequired, live, values, text);
+        if (needParentheses) {
+            text.append(" )");
+        }
+
+        return switch (operator) {
+            case '+' -> lhs + rhs;
+            case '-' -> lhs - rhs;
+            default -> lhs * rhs;
+        };
+    }
+
+    private final int declarations;
+    private final int statements;
+    private final int expressionDepth;
+    private final int livePressure;
+    private final int maxConstant;
+    private final Random random;
+    private Integer expectedResult = null;
+}